@@ -0,0 +1,25 @@
+package com.github.gfranks.minimal.notification.benchmark;
+
+import android.os.Bundle;
+import android.support.design.widget.CoordinatorLayout;
+import android.support.v7.app.AppCompatActivity;
+
+/**
+ * Hosts the notifications made by the benchmarks within a CoordinatorLayout, the way most
+ * applications do.
+ */
+public class BenchmarkActivity extends AppCompatActivity {
+
+    private CoordinatorLayout mCoordinatorLayout;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mCoordinatorLayout = new CoordinatorLayout(this);
+        setContentView(mCoordinatorLayout);
+    }
+
+    public CoordinatorLayout getCoordinatorLayout() {
+        return mCoordinatorLayout;
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.gfranks.minimal.notification;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Runs an operation repeatedly and reports how long it took, and how many bytes it allocated, per
+ * run. Each operation is warmed up first so that the JIT has settled before anything is recorded.
+ */
+final class Benchmark {
+
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int ITERATIONS = 1000;
+
+    interface Operation {
+        void run();
+    }
+
+    private static final Method sGetThreadAllocatedBytes;
+    private static final Object sThreadMXBean;
+    private static final long sAllocationOverhead;
+
+    static {
+        // java.lang.management is missing from the android.jar these tests compile against
+        Method method = null;
+        Object threadMXBean = null;
+        try {
+            threadMXBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            method = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+        } catch (Exception e) {
+            // allocations are reported as -1
+        }
+        sGetThreadAllocatedBytes = method;
+        sThreadMXBean = threadMXBean;
+
+        // The bytes allocated by reading the allocated bytes, subtracted from every reading
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            overhead = Math.min(overhead, -allocatedBytes() + allocatedBytes());
+        }
+        sAllocationOverhead = overhead;
+    }
+
+    private Benchmark() {
+    }
+
+    static void run(String name, Operation operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run();
+        }
+
+        final long[] durations = new long[ITERATIONS];
+        final long[] allocations = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            final long allocatedBefore = allocatedBytes();
+            final long start = System.nanoTime();
+            operation.run();
+            durations[i] = System.nanoTime() - start;
+            allocations[i] = allocatedBytes() - allocatedBefore - sAllocationOverhead;
+        }
+
+        Arrays.sort(durations);
+        Arrays.sort(allocations);
+        System.out.println(String.format(Locale.US,
+                "%-48s median %,10d ns  p90 %,10d ns  allocated %,8d bytes",
+                name, durations[ITERATIONS / 2], durations[ITERATIONS * 9 / 10],
+                sGetThreadAllocatedBytes != null ? allocations[ITERATIONS / 2] : -1));
+    }
+
+    private static long allocatedBytes() {
+        if (sGetThreadAllocatedBytes == null) {
+            return 0;
+        }
+        try {
+            return (Long) sGetThreadAllocatedBytes.invoke(sThreadMXBean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
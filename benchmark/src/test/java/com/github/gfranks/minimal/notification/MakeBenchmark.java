@@ -0,0 +1,135 @@
+package com.github.gfranks.minimal.notification;
+
+import android.view.View;
+import android.widget.TextView;
+
+import com.github.gfranks.minimal.notification.benchmark.BenchmarkActivity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+@RunWith(RobolectricTestRunner.class)
+public class MakeBenchmark {
+
+    private BenchmarkActivity mActivity;
+    private View mAnchor;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.buildActivity(BenchmarkActivity.class).setup().get();
+        mAnchor = mActivity.getCoordinatorLayout();
+        // Notifications keep their view by default, unless recycled below every make inflates a new one
+        GFMinimalNotification.setMaxRecycledViews(0);
+    }
+
+    @After
+    public void tearDown() {
+        GFMinimalNotification.setMaxRecycledViews(3);
+        GFMinimalNotification.setRenderer(GFMinimalNotification.RENDERER_DEFAULT);
+    }
+
+    @Test
+    public void make() {
+        Benchmark.run("make", new Benchmark.Operation() {
+            @Override
+            public void run() {
+                GFMinimalNotification.make(mAnchor, "Benchmark", GFMinimalNotification.LENGTH_SHORT);
+            }
+        });
+    }
+
+    @Test
+    public void makeRecycled() {
+        GFMinimalNotification.setMaxRecycledViews(3);
+        Benchmark.run("make (recycled, setReusable(false))", new Benchmark.Operation() {
+            @Override
+            public void run() {
+                recycle(GFMinimalNotification.make(mAnchor, "Benchmark", GFMinimalNotification.LENGTH_SHORT));
+            }
+        });
+    }
+
+    @Test
+    public void makeLite() {
+        GFMinimalNotification.setRenderer(GFMinimalNotification.RENDERER_LITE);
+        Benchmark.run("make (lite)", new Benchmark.Operation() {
+            @Override
+            public void run() {
+                GFMinimalNotification.make(mAnchor, "Benchmark", GFMinimalNotification.LENGTH_SHORT);
+            }
+        });
+    }
+
+    @Test
+    public void makeWithTintedImages() {
+        final GFMinimalNotification.OnActionClickListener listener = new GFMinimalNotification.OnActionClickListener() {
+            @Override
+            public boolean onActionClick(GFMinimalNotification notification) {
+                return true;
+            }
+        };
+        Benchmark.run("make (tinted helper and action images)", new Benchmark.Operation() {
+            @Override
+            public void run() {
+                GFMinimalNotification.make(mAnchor, "Benchmark", GFMinimalNotification.LENGTH_SHORT)
+                        .setCustomIconTintColor(0xFFFFFFFF)
+                        .setHelperImage(R.drawable.ic_launcher)
+                        .setActionImage(R.drawable.ic_launcher, listener);
+            }
+        });
+    }
+
+    @Test
+    public void makeWithCustomViewResource() {
+        Benchmark.run("make (custom view resource)", new Benchmark.Operation() {
+            @Override
+            public void run() {
+                GFMinimalNotification.make(mAnchor,
+                        com.github.gfranks.minimal.notification.benchmark.R.layout.benchmark_custom_notification);
+            }
+        });
+    }
+
+    @Test
+    public void makeWithRecycledCustomViewResource() {
+        GFMinimalNotification.setMaxRecycledViews(3);
+        final GFMinimalNotification.CustomViewBinder binder = new GFMinimalNotification.CustomViewBinder() {
+            @Override
+            public void onBindCustomView(GFMinimalNotification notification, View customView) {
+                ((TextView) customView).setText("Benchmark");
+            }
+        };
+        Benchmark.run("make (recycled custom view resource, setReusable(false))", new Benchmark.Operation() {
+            @Override
+            public void run() {
+                recycle(GFMinimalNotification.make(mAnchor,
+                        com.github.gfranks.minimal.notification.benchmark.R.layout.benchmark_custom_notification,
+                        binder));
+            }
+        });
+    }
+
+    @Test
+    public void makeWithCustomView() {
+        Benchmark.run("make (custom view)", new Benchmark.Operation() {
+            @Override
+            public void run() {
+                GFMinimalNotification.make(mAnchor, new TextView(mActivity));
+            }
+        });
+    }
+
+    /**
+     * Hand the view back the way a dismissed notification made with setReusable(false) does, for
+     * the next make to reuse
+     */
+    private static void recycle(GFMinimalNotification notification) {
+        notification.recycle();
+        ShadowLooper.idleMainLooper();
+    }
+}
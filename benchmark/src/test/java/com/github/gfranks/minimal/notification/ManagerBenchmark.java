@@ -0,0 +1,145 @@
+package com.github.gfranks.minimal.notification;
+
+import com.github.gfranks.minimal.notification.benchmark.BenchmarkActivity;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.TimeUnit;
+
+@RunWith(RobolectricTestRunner.class)
+public class ManagerBenchmark {
+
+    private static final int QUEUED = 10;
+
+    private static final GFMinimalNotificationManager.Callback CALLBACK = new GFMinimalNotificationManager.Callback() {
+        @Override
+        public void show() {
+        }
+
+        @Override
+        public void dismiss(int event) {
+        }
+
+        @Override
+        public void remove() {
+        }
+
+        @Override
+        public void coalesce(GFMinimalNotificationManager.Callback from, int repeatCount) {
+        }
+
+        @Override
+        public void discard() {
+        }
+
+        @Override
+        public CharSequence getText() {
+            return null;
+        }
+
+        @Override
+        public void merged() {
+        }
+
+        @Override
+        public void onEvent(int event, int queueDepth) {
+        }
+    };
+
+    @After
+    public void tearDown() {
+        GFMinimalNotification.setQueueCapacity(1);
+    }
+
+    @Test
+    public void showDismiss() {
+        final GFMinimalNotificationManager manager = new GFMinimalNotificationManager();
+        final GFMinimalNotificationManager.Record record = new GFMinimalNotificationManager.Record(CALLBACK);
+        Benchmark.run("manager show/dismiss", new Benchmark.Operation() {
+            @Override
+            public void run() {
+                show(manager, record);
+                manager.onShown(record);
+                dismiss(manager, record);
+            }
+        });
+    }
+
+    @Test
+    public void showDismissQueued() {
+        GFMinimalNotification.setQueueCapacity(QUEUED);
+        final GFMinimalNotificationManager manager = new GFMinimalNotificationManager();
+        final GFMinimalNotificationManager.Record[] records = new GFMinimalNotificationManager.Record[QUEUED + 1];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new GFMinimalNotificationManager.Record(CALLBACK);
+        }
+        Benchmark.run("manager show/dismiss (" + QUEUED + " queued)", new Benchmark.Operation() {
+            @Override
+            public void run() {
+                for (GFMinimalNotificationManager.Record record : records) {
+                    show(manager, record);
+                }
+                for (GFMinimalNotificationManager.Record record : records) {
+                    manager.onShown(record);
+                    dismiss(manager, record);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void showAllDismissQueued() {
+        GFMinimalNotification.setQueueCapacity(QUEUED);
+        final GFMinimalNotificationManager manager = new GFMinimalNotificationManager();
+        final GFMinimalNotificationManager.Record[] records = new GFMinimalNotificationManager.Record[QUEUED + 1];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new GFMinimalNotificationManager.Record(CALLBACK);
+        }
+        Benchmark.run("manager showAll/dismiss (" + QUEUED + " queued)", new Benchmark.Operation() {
+            @Override
+            public void run() {
+                for (GFMinimalNotificationManager.Record record : records) {
+                    record.stage(GFMinimalNotification.LENGTH_SHORT, GFMinimalNotification.TYPE_DEFAULT,
+                            GFMinimalNotification.PRIORITY_DEFAULT, null);
+                }
+                manager.showAll(records, 0, records.length);
+                for (GFMinimalNotificationManager.Record record : records) {
+                    manager.onShown(record);
+                    dismiss(manager, record);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void notificationCycle() {
+        final BenchmarkActivity activity = Robolectric.buildActivity(BenchmarkActivity.class).setup().get();
+        Benchmark.run("make/show/dismiss cycle", new Benchmark.Operation() {
+            @Override
+            public void run() {
+                final GFMinimalNotification notification = GFMinimalNotification.make(
+                        activity.getCoordinatorLayout(), "Benchmark", GFMinimalNotification.LENGTH_SHORT)
+                        .setReusable(false);
+                notification.show();
+                ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+                notification.dismiss();
+                ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+            }
+        });
+    }
+
+    private static void show(GFMinimalNotificationManager manager, GFMinimalNotificationManager.Record record) {
+        manager.show(record, GFMinimalNotification.LENGTH_SHORT, GFMinimalNotification.TYPE_DEFAULT,
+                GFMinimalNotification.PRIORITY_DEFAULT, null);
+    }
+
+    private static void dismiss(GFMinimalNotificationManager manager, GFMinimalNotificationManager.Record record) {
+        manager.dismiss(record, GFMinimalNotification.Callback.DISMISS_EVENT_MANUAL);
+        manager.onDismissed(record);
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.gfranks.minimal.notification;
+
+import android.graphics.drawable.GradientDrawable;
+import android.view.View;
+
+import com.github.gfranks.minimal.notification.benchmark.BenchmarkActivity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class MeasureBenchmark {
+
+    private static final String SHORT_TEXT = "Message sent";
+    private static final String LONG_TEXT = "The message could not be sent as the connection was lost, "
+            + "it will be sent again as soon as the connection is restored";
+
+    private static final int WIDTH_SPEC = View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY);
+    private static final int HEIGHT_SPEC = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+
+    private BenchmarkActivity mActivity;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.buildActivity(BenchmarkActivity.class).setup().get();
+    }
+
+    @Test
+    public void measureShortText() {
+        measure("onMeasure (short)", newLayout(SHORT_TEXT, false, false, false));
+    }
+
+    @Test
+    public void measureMultiLineText() {
+        measure("onMeasure (multi-line)", newLayout(LONG_TEXT, false, false, false));
+    }
+
+    @Test
+    public void measureShortTextWithAction() {
+        measure("onMeasure (short, action)", newLayout(SHORT_TEXT, true, false, false));
+    }
+
+    @Test
+    public void measureMultiLineTextWithActionAndImage() {
+        measure("onMeasure (multi-line, action, image)", newLayout(LONG_TEXT, true, true, false));
+    }
+
+    @Test
+    public void measureShortTextLite() {
+        measure("onMeasure (short, lite)", newLayout(SHORT_TEXT, false, false, true));
+    }
+
+    @Test
+    public void measureMultiLineTextWithActionAndImageLite() {
+        measure("onMeasure (multi-line, action, image, lite)", newLayout(LONG_TEXT, true, true, true));
+    }
+
+    private GFMinimalNotificationLayout newLayout(String text, boolean action, boolean helperImage,
+                                                  boolean lite) {
+        final GFMinimalNotificationLayout layout = GFMinimalNotificationLayoutPool.get(mActivity)
+                .acquire(mActivity.getCoordinatorLayout(), 0, lite);
+        layout.setMessageText(text);
+        if (action) {
+            layout.setAction("Retry", null);
+        }
+        if (helperImage) {
+            final GradientDrawable drawable = new GradientDrawable();
+            drawable.setSize(48, 48);
+            layout.setHelperImage(drawable);
+        }
+        return layout;
+    }
+
+    private static void measure(String name, final GFMinimalNotificationLayout layout) {
+        Benchmark.run(name, new Benchmark.Operation() {
+            @Override
+            public void run() {
+                // Otherwise measure is skipped for the same specs
+                layout.forceLayout();
+                layout.measure(WIDTH_SPEC, HEIGHT_SPEC);
+            }
+        });
+    }
+}
@@ -1,12 +1,11 @@
 package com.github.gfranks.minimal.notification;
 
+import android.app.Activity;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
-import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
@@ -15,19 +14,20 @@ import android.support.annotation.DrawableRes;
 import android.support.annotation.IntDef;
 import android.support.annotation.LayoutRes;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
 import android.support.annotation.StyleRes;
 import android.support.design.widget.CoordinatorLayout;
 import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.SwipeDismissBehavior;
-import android.support.v4.content.ContextCompat;
+import android.support.v4.os.TraceCompat;
 import android.support.v4.view.ViewCompat;
+import android.support.v4.view.ViewPropertyAnimatorCompat;
 import android.support.v4.view.ViewPropertyAnimatorListenerAdapter;
 import android.support.v4.view.animation.FastOutSlowInInterpolator;
 import android.text.TextUtils;
 import android.util.TypedValue;
 import android.view.Gravity;
-import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
@@ -35,22 +35,17 @@ import android.view.ViewParent;
 import android.view.accessibility.AccessibilityManager;
 import android.view.animation.Interpolator;
 import android.widget.FrameLayout;
-import android.widget.ImageButton;
-import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
-import android.widget.TextView;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.text.NumberFormat;
+import java.util.List;
 
 public class GFMinimalNotification {
 
     private static final Interpolator FAST_OUT_SLOW_IN_INTERPOLATOR = new FastOutSlowInInterpolator();
-    private static @ColorInt int COLOR_DEFAULT = 0xFF323232;
-    private static @ColorInt int COLOR_ERROR = 0xFFE84D3B;
-    private static @ColorInt int COLOR_WARNING = 0xFFEDC034;
-    private static int DIRECTION_DEFAULT = GFMinimalNotification.DIRECTION_BOTTOM;
 
     /**
      * Callback class for {@link GFMinimalNotification} instances.
@@ -116,6 +111,34 @@ public class GFMinimalNotification {
     @Retention(RetentionPolicy.SOURCE)
     public @interface Direction {}
 
+    /**
+     * @hide
+     */
+    @IntDef({PRIORITY_LOW, PRIORITY_DEFAULT, PRIORITY_HIGH})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Priority {}
+
+    /**
+     * @hide
+     */
+    @IntDef({OVERFLOW_DROP_OLDEST, OVERFLOW_DROP_LOWEST_PRIORITY, OVERFLOW_COALESCE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface OverflowPolicy {}
+
+    /**
+     * @hide
+     */
+    @IntDef({ANIMATION_MODE_CHILDREN, ANIMATION_MODE_HARDWARE_LAYER})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface AnimationMode {}
+
+    /**
+     * @hide
+     */
+    @IntDef({RENDERER_DEFAULT, RENDERER_LITE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Renderer {}
+
     /**
      * Show the GFMinimalNotification indefinitely. This means that the GFMinimalNotification will be displayed from
      * the time that is {@link #show() shown} until either it is dismissed, or another GFMinimalNotification is shown.
@@ -183,12 +206,97 @@ public class GFMinimalNotification {
      */
     public static final int DIRECTION_BOTTOM = 2;
 
+    /**
+     * Queue the GFMinimalNotification behind any other waiting notification
+     *
+     * @see #setPriority
+     */
+    public static final int PRIORITY_LOW = -1;
+
+    /**
+     * The priority of {@link #TYPE_DEFAULT} and {@link #TYPE_WARNING} notifications unless one is set
+     *
+     * @see #setPriority
+     */
+    public static final int PRIORITY_DEFAULT = 0;
+
+    /**
+     * Queue the GFMinimalNotification ahead of lower priority notifications. This is the priority of
+     * {@link #TYPE_ERROR} notifications unless one is set
+     *
+     * @see #setPriority
+     */
+    public static final int PRIORITY_HIGH = 1;
+
+    /**
+     * When the queue is full, drop the notification that has been waiting the longest
+     *
+     * @see #setQueueOverflowPolicy
+     */
+    public static final int OVERFLOW_DROP_OLDEST = 0;
+
+    /**
+     * When the queue is full, drop the most recently queued notification of the lowest priority. A
+     * new notification of a lower priority than every queued notification is dropped instead.
+     *
+     * @see #setQueueOverflowPolicy
+     */
+    public static final int OVERFLOW_DROP_LOWEST_PRIORITY = 1;
+
+    /**
+     * When the queue is full, replace the most recently queued notification of the same priority,
+     * keeping its place in line. Falls back to {@link #OVERFLOW_DROP_LOWEST_PRIORITY}.
+     *
+     * @see #setQueueOverflowPolicy
+     */
+    public static final int OVERFLOW_COALESCE = 2;
+
+    /**
+     * Slide the notification in and out while fading each of its children separately. The default.
+     *
+     * @see #setAnimationMode
+     */
+    public static final int ANIMATION_MODE_CHILDREN = 0;
+
+    /**
+     * Slide and fade the notification as a whole, from a single animator, on a hardware layer for
+     * the length of the animation. Only the notification itself is invalidated per frame, keeping the
+     * animation smooth while the main thread is busy.
+     *
+     * @see #setAnimationMode
+     */
+    public static final int ANIMATION_MODE_HARDWARE_LAYER = 1;
+
+    /**
+     * Lay out the notification's helper image, message and action as views of their own. The
+     * default.
+     *
+     * @see #setRenderer
+     */
+    public static final int RENDERER_DEFAULT = 0;
+
+    /**
+     * Draw the notification's helper image, message and action from a single view, skipping the
+     * measure, layout and accessibility cost of a view per part. Best suited to simple messages,
+     * the action is always shown inline, at the end of the message.
+     *
+     * @see #setRenderer
+     */
+    public static final int RENDERER_LITE = 1;
+
     private static final int ANIMATION_DURATION = 250;
     private static final int ANIMATION_FADE_DURATION = 180;
+    private static final String FIRST_STRONG_ISOLATE = "\u2068";
+    private static final String POP_DIRECTIONAL_ISOLATE = "\u2069";
 
     private static final Handler sHandler;
+    static volatile GFMinimalNotificationEventListener sEventListener;
+    private static volatile @Renderer int sRenderer = RENDERER_DEFAULT;
     private static final int MSG_SHOW = 0;
     private static final int MSG_DISMISS = 1;
+    private static final int MSG_COALESCE = 2;
+    private static final int MSG_DISCARD = 3;
+    private static final int MSG_SUMMARIZED = 4;
 
     static {
         sHandler = new Handler(Looper.getMainLooper(), new Handler.Callback() {
@@ -201,6 +309,15 @@ public class GFMinimalNotification {
                     case MSG_DISMISS:
                         ((GFMinimalNotification) message.obj).hideView(message.arg1);
                         return true;
+                    case MSG_COALESCE:
+                        ((GFMinimalNotification) message.obj).onCoalesced(message.arg1);
+                        return true;
+                    case MSG_DISCARD:
+                        ((GFMinimalNotification) message.obj).recycleView();
+                        return true;
+                    case MSG_SUMMARIZED:
+                        ((GFMinimalNotification) message.obj).onSummarized();
+                        return true;
                 }
                 return false;
             }
@@ -210,46 +327,72 @@ public class GFMinimalNotification {
     private final ViewGroup mTargetParent;
     private final Context mContext;
     private final GFMinimalNotificationLayout mView;
+    private final GFMinimalNotificationTheme mTheme;
     private int mDuration;
     private @Type int mType;
+    private @Priority int mPriority;
+    private boolean mHasPriority;
     private @ColorInt int mCustomBackgroundColor = -1;
-    private @Direction int mDirection = DIRECTION_DEFAULT;
+    // Matches the gravity the layout is inflated (or recycled) with, the theme direction is applied on top
+    private @Direction int mDirection = DIRECTION_BOTTOM;
+    private @AnimationMode int mAnimationMode = ANIMATION_MODE_CHILDREN;
     private Callback mCallback;
+    private boolean mViewRecycled;
+    // Whether we were hidden, or dropped without being shown, since last shown
+    private volatile boolean mDismissed;
+    private boolean mReusable = true;
+    private boolean mPrecomputeText;
+    private CharSequence mText;
+    private String mCoalescingKey;
+    private int mRepeatCount = 1;
+    private CharSequence mCoalescedText;
+    private @Callback.DismissEvent int mAnimateOutEvent;
 
     private final AccessibilityManager mAccessibilityManager;
+    private final GFMinimalNotificationManager mManager;
+    private final GFMinimalNotificationManager.Record mRecord;
 
     private GFMinimalNotification(ViewGroup parent) {
-        mTargetParent = parent;
-        mContext = parent.getContext();
-
-        TypedArray a = mContext.obtainStyledAttributes(new int[] { R.attr.colorPrimary });
-        final boolean failed = !a.hasValue(0);
-        a.recycle();
-        if (failed) {
-            throw new IllegalArgumentException("You need to use a Theme.AppCompat theme "
-                    + "(or descendant) with the design library.");
-        }
-
-        LayoutInflater inflater = LayoutInflater.from(mContext);
-        mView = (GFMinimalNotificationLayout) inflater.inflate(R.layout.layout_minimal_notification, mTargetParent, false);
+        this(parent, 0, false, null);
+    }
 
-        mAccessibilityManager = (AccessibilityManager)
-                mContext.getSystemService(Context.ACCESSIBILITY_SERVICE);
+    private GFMinimalNotification(ViewGroup parent, @LayoutRes int customViewResId, boolean boundCustomView,
+                                  View customView) {
+        TraceCompat.beginSection("GFMinimalNotification#make");
+        try {
+            mTargetParent = parent;
+            mContext = parent.getContext();
+            mManager = GFMinimalNotificationManager.get(parent);
+            mRecord = new GFMinimalNotificationManager.Record(mManagerCallback,
+                    GFMinimalNotificationLifecycle.findActivity(mContext));
+
+            mTheme = GFMinimalNotificationTheme.obtain(mContext);
+
+            // Custom views are set up front, sparing the default children an inflation
+            final GFMinimalNotificationLayoutPool pool = GFMinimalNotificationLayoutPool.get(mContext);
+            if (customView != null) {
+                mView = pool.inflate(mTargetParent);
+                mView.updateWithCustomView(customView);
+            } else if (customViewResId != 0 && !boundCustomView) {
+                // Nobody fills a recycled custom view in, it is only ever used once
+                mView = pool.inflate(mTargetParent);
+                mView.updateWithCustomView(customViewResId);
+            } else {
+                mView = pool.acquire(mTargetParent, customViewResId, sRenderer == RENDERER_LITE);
+            }
 
-        resolveThemesAttributes();
-        setDuration(LENGTH_LONG);
-        setType(TYPE_DEFAULT);
-    }
+            mAccessibilityManager = (AccessibilityManager)
+                    mContext.getSystemService(Context.ACCESSIBILITY_SERVICE);
 
-    private GFMinimalNotification(ViewGroup parent, @LayoutRes int customViewResId) {
-        this(parent);
-        setCustomView(customViewResId);
+            resolveThemesAttributes();
+            setDuration(LENGTH_LONG);
+            setType(TYPE_DEFAULT);
+        } finally {
+            TraceCompat.endSection();
+        }
+        dispatchEvent(GFMinimalNotificationEventListener.EVENT_MADE);
     }
 
-    private GFMinimalNotification(ViewGroup parent, View customView) {
-        this(parent);
-        setCustomView(customView);
-    }
 
     /**
      * Make a GFMinimalNotification to display a message
@@ -338,14 +481,38 @@ public class GFMinimalNotification {
     }
 
     /**
-     * See {@link #make(View)}
+     * See {@link #make(View)}. The custom view is inflated for this notification alone, see
+     * {@link #make(View, int, CustomViewBinder)} for one that may be recycled.
      *
      * @param view            The view to find a parent from.
      * @param customViewResId The custom view resource id to be inflated and used as the notification
      */
     @NonNull
     public static GFMinimalNotification make(@NonNull View view, @LayoutRes int customViewResId) {
-        return new GFMinimalNotification(findSuitableParent(view), customViewResId);
+        return new GFMinimalNotification(findSuitableParent(view), customViewResId, false, null);
+    }
+
+    /**
+     * See {@link #make(View, int)}. The custom view may be recycled from a notification made the same
+     * way, from the same layout, before, rather than inflated, and is handed to the binder to be
+     * filled in.
+     *
+     * @param customViewResId The custom view resource id to be inflated, or recycled, and used as the
+     *                        notification
+     * @param binder          Fills the custom view in for this notification
+     */
+    @NonNull
+    public static GFMinimalNotification make(@NonNull View view, @LayoutRes int customViewResId,
+                                             @NonNull CustomViewBinder binder) {
+        final GFMinimalNotification notification =
+                new GFMinimalNotification(findSuitableParent(view), customViewResId, true, null);
+        try {
+            binder.onBindCustomView(notification, notification.mView.getCustomView());
+        } catch (RuntimeException exception) {
+            notification.recycle();
+            throw exception;
+        }
+        return notification;
     }
 
     /**
@@ -355,7 +522,7 @@ public class GFMinimalNotification {
      */
     @NonNull
     public static GFMinimalNotification make(@NonNull View view, View customView) {
-        return new GFMinimalNotification(findSuitableParent(view), customView);
+        return new GFMinimalNotification(findSuitableParent(view), 0, false, customView);
     }
 
     /**
@@ -384,16 +551,10 @@ public class GFMinimalNotification {
             throw new IllegalStateException("You may not set the action text when using a custom view");
         }
 
-        final TextView tv = mView.getActionTextView();
-
         if (TextUtils.isEmpty(text) || listener == null) {
-            tv.setVisibility(View.GONE);
-            tv.setOnClickListener(null);
+            mView.setAction(null, null);
         } else {
-            mView.getActionImageView().setVisibility(View.GONE);
-            tv.setVisibility(View.VISIBLE);
-            tv.setText(text);
-            tv.setOnClickListener(new View.OnClickListener() {
+            mView.setAction(text, new View.OnClickListener() {
                 @Override
                 public void onClick(View view) {
                     if (listener.onActionClick(GFMinimalNotification.this)) {
@@ -418,8 +579,7 @@ public class GFMinimalNotification {
             throw new IllegalStateException("You may not apply an action text color when using a custom view");
         }
 
-        final TextView tv = mView.getActionTextView();
-        tv.setTextColor(colors);
+        mView.setActionTextColor(colors);
         return this;
     }
 
@@ -432,8 +592,7 @@ public class GFMinimalNotification {
             throw new IllegalStateException("You may not apply an action text color when using a custom view");
         }
 
-        final TextView tv = mView.getActionTextView();
-        tv.setTextColor(color);
+        mView.setActionTextColor(ColorStateList.valueOf(color));
         return this;
     }
 
@@ -453,8 +612,7 @@ public class GFMinimalNotification {
 			throw new IllegalStateException("You may not apply a custom action text size when using a custom view");
 		}
 
-		final TextView tv = mView.getActionTextView();
-		tv.setTextSize(TypedValue.COMPLEX_UNIT_SP, size);
+		mView.setActionTextSize(TypedValue.COMPLEX_UNIT_SP, size);
 		return this;
 	}
 
@@ -470,8 +628,7 @@ public class GFMinimalNotification {
 			throw new IllegalStateException("You may not apply an action text typeface when using a custom view");
 		}
 
-		final TextView tv = mView.getActionTextView();
-		tv.setTypeface(typeface);
+		mView.setActionTypeface(typeface);
 		return this;
 	}
 
@@ -488,8 +645,7 @@ public class GFMinimalNotification {
 			throw new IllegalStateException("You may not apply an action text typeface when using a custom view");
 		}
 
-		final TextView tv = mView.getActionTextView();
-		tv.setTypeface(typeface, style);
+		mView.setActionTypeface(typeface, style);
 		return this;
 	}
 
@@ -502,11 +658,20 @@ public class GFMinimalNotification {
      */
     @NonNull
     public GFMinimalNotification setActionImage(@DrawableRes int actionResId, OnActionClickListener listener) {
+        if (mView.hasCustomView()) {
+            throw new IllegalStateException("You may not apply an action image when using a custom view");
+        }
+
         try {
-            return setActionImage(ContextCompat.getDrawable(mContext, actionResId), listener);
+            // Resolved through the drawable cache, tinted and shared with other notifications
+            if (listener == null) {
+                mView.setActionImage(null, null);
+            } else {
+                mView.setActionImage(actionResId, newActionImageClickListener(listener));
+            }
         } catch (Resources.NotFoundException exception) {
             exception.printStackTrace();
-            mView.getActionImageView().setVisibility(View.GONE);
+            mView.setActionImage(null, null);
         }
         return this;
     }
@@ -515,33 +680,31 @@ public class GFMinimalNotification {
      * See {@link #setActionImage(int, OnActionClickListener)}
      */
     @NonNull
-    public GFMinimalNotification setActionImage(Drawable drawable, final OnActionClickListener listener) {
+    public GFMinimalNotification setActionImage(Drawable drawable, OnActionClickListener listener) {
         if (mView.hasCustomView()) {
             throw new IllegalStateException("You may not apply an action image when using a custom view");
         }
 
-        final ImageButton btn = mView.getActionImageView();
-
         if (drawable == null || listener == null) {
-            btn.setVisibility(View.GONE);
-            btn.setOnClickListener(null);
+            mView.setActionImage(null, null);
         } else {
-            mView.getActionTextView().setVisibility(View.GONE);
-            btn.setVisibility(View.VISIBLE);
-            btn.setImageDrawable(drawable);
-            btn.setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View view) {
-                    if (listener.onActionClick(GFMinimalNotification.this)) {
-                        // Now dismiss the GFMinimalNotification
-                        dispatchDismiss(Callback.DISMISS_EVENT_ACTION);
-                    }
-                }
-            });
+            mView.setActionImage(drawable, newActionImageClickListener(listener));
         }
         return this;
     }
 
+    private View.OnClickListener newActionImageClickListener(final OnActionClickListener listener) {
+        return new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                if (listener.onActionClick(GFMinimalNotification.this)) {
+                    // Now dismiss the GFMinimalNotification
+                    dispatchDismiss(Callback.DISMISS_EVENT_ACTION);
+                }
+            }
+        };
+    }
+
     /**
      * Set the helper drawable resource to be displayed in this {@link GFMinimalNotification}.
      *
@@ -549,11 +712,15 @@ public class GFMinimalNotification {
      */
     @NonNull
     public GFMinimalNotification setHelperImage(@DrawableRes int resId) {
+        if (mView.hasCustomView()) {
+            throw new IllegalStateException("You may not apply a helper image when using a custom view");
+        }
+
         try {
-            return setHelperImage(ContextCompat.getDrawable(mContext, resId));
+            mView.setHelperImage(resId);
         } catch (Resources.NotFoundException exception) {
             exception.printStackTrace();
-            mView.getHelperImageView().setVisibility(View.GONE);
+            mView.setHelperImage(null);
         }
         return this;
     }
@@ -567,14 +734,7 @@ public class GFMinimalNotification {
             throw new IllegalStateException("You may not apply a helper image when using a custom view");
         }
 
-        final ImageView iv = mView.getHelperImageView();
-
-        if (drawable == null) {
-            iv.setVisibility(View.GONE);
-        } else {
-            iv.setVisibility(View.VISIBLE);
-            iv.setImageDrawable(drawable);
-        }
+        mView.setHelperImage(drawable);
         return this;
     }
 
@@ -602,11 +762,46 @@ public class GFMinimalNotification {
             throw new IllegalStateException("You may not set the text when using a custom view");
         }
 
-        final TextView tv = mView.getMessageView();
-        tv.setText(text);
+        mText = text;
+        updateMessageText();
         return this;
     }
 
+    /**
+     * Set a key identifying notifications that carry the same message. Showing a notification while
+     * another with the same key is shown, or waiting to be shown, merges the two: the existing
+     * notification takes on the new text and duration and displays a repeat count, while the new
+     * notification is discarded without being shown. Its view is recycled, whether or not it is
+     * {@link #setReusable(boolean) reusable}, and it may not be shown again.
+     *
+     * @param coalescingKey The key, or null to never merge this notification
+     * @see #setCoalescingWindow(long)
+     */
+    @NonNull
+    public GFMinimalNotification setCoalescingKey(String coalescingKey) {
+        mCoalescingKey = coalescingKey;
+        return this;
+    }
+
+    /**
+     * Return the coalescing key.
+     *
+     * @see #setCoalescingKey
+     */
+    public String getCoalescingKey() {
+        return mCoalescingKey;
+    }
+
+    /**
+     * Return the number of times this notification has been shown, including notifications that were
+     * merged into it.
+     *
+     * @see #setCoalescingKey
+     */
+    public int getRepeatCount() {
+        return mRepeatCount;
+    }
+
     /**
      * Update the text appearance in this {@link GFMinimalNotification}.
      *
@@ -619,12 +814,7 @@ public class GFMinimalNotification {
         }
 
         try {
-            TextView tv = mView.getMessageView();
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                tv.setTextAppearance(resId);
-            } else {
-                tv.setTextAppearance(mContext, resId);
-            }
+            mView.setMessageTextAppearance(resId);
             return this;
         } catch (Resources.NotFoundException exception) {
             exception.printStackTrace();
@@ -648,8 +838,7 @@ public class GFMinimalNotification {
 			throw new IllegalStateException("You may not apply a custom text size when using a custom view");
 		}
 
-		TextView tv = mView.getMessageView();
-		tv.setTextSize(TypedValue.COMPLEX_UNIT_SP, size);
+		mView.setMessageTextSize(TypedValue.COMPLEX_UNIT_SP, size);
 		return this;
 	}
 
@@ -665,8 +854,7 @@ public class GFMinimalNotification {
 			throw new IllegalStateException("You may not apply a custom text typeface when using a custom view");
 		}
 
-		TextView tv = mView.getMessageView();
-		tv.setTypeface(typeface);
+		mView.setMessageTypeface(typeface);
 		return this;
 	}
 
@@ -683,8 +871,7 @@ public class GFMinimalNotification {
 			throw new IllegalStateException("You may not apply a custom text typeface when using a custom view");
 		}
 
-		TextView tv = mView.getMessageView();
-		tv.setTypeface(typeface, style);
+		mView.setMessageTypeface(typeface, style);
 		return this;
 	}
 
@@ -699,7 +886,7 @@ public class GFMinimalNotification {
             throw new IllegalStateException("You may not set max lines when using a custom view");
         }
 
-        mView.getMessageView().setMaxLines(maxLines);
+        mView.setMessageMaxLines(maxLines);
 
         return this;
     }
@@ -770,8 +957,10 @@ public class GFMinimalNotification {
             ((LinearLayout.LayoutParams) lp).gravity = direction == DIRECTION_TOP ? Gravity.TOP : Gravity.BOTTOM;
         } else if (lp instanceof RelativeLayout.LayoutParams) {
             if (direction == DIRECTION_TOP) {
+                ((RelativeLayout.LayoutParams) lp).addRule(RelativeLayout.ALIGN_PARENT_BOTTOM, 0);
                 ((RelativeLayout.LayoutParams) lp).addRule(RelativeLayout.ALIGN_PARENT_TOP);
             } else {
+                ((RelativeLayout.LayoutParams) lp).addRule(RelativeLayout.ALIGN_PARENT_TOP, 0);
                 ((RelativeLayout.LayoutParams) lp).addRule(RelativeLayout.ALIGN_PARENT_BOTTOM);
             }
         } else {
@@ -795,6 +984,28 @@ public class GFMinimalNotification {
         return mDirection;
     }
 
+    /**
+     * Set how the notification is animated in and out
+     *
+     * @param animationMode Either one of the predefined modes:
+     *                      {@link #ANIMATION_MODE_CHILDREN} or {@link #ANIMATION_MODE_HARDWARE_LAYER}
+     */
+    @NonNull
+    public GFMinimalNotification setAnimationMode(@AnimationMode int animationMode) {
+        mAnimationMode = animationMode;
+        return this;
+    }
+
+    /**
+     * Return the current animation mode
+     *
+     * @see #setAnimationMode
+     */
+    @AnimationMode
+    public int getAnimationMode() {
+        return mAnimationMode;
+    }
+
     /**
      * Set the type of the notification message to show.
      *
@@ -818,6 +1029,35 @@ public class GFMinimalNotification {
         return mType;
     }
 
+    /**
+     * Set the priority used to order this notification against others waiting to be shown. A
+     * notification of an equal or higher priority replaces the one currently shown, otherwise it
+     * waits for the current one to be dismissed.
+     *
+     * @param priority Either one of the predefined priorities:
+     *                 {@link #PRIORITY_LOW}, {@link #PRIORITY_DEFAULT}, or {@link #PRIORITY_HIGH}
+     */
+    @NonNull
+    public GFMinimalNotification setPriority(@Priority int priority) {
+        mPriority = priority;
+        mHasPriority = true;
+        return this;
+    }
+
+    /**
+     * Return the priority. Unless set, this is {@link #PRIORITY_HIGH} for {@link #TYPE_ERROR}
+     * notifications and {@link #PRIORITY_DEFAULT} otherwise.
+     *
+     * @see #setPriority
+     */
+    @Priority
+    public int getPriority() {
+        if (mHasPriority) {
+            return mPriority;
+        }
+        return mType == TYPE_ERROR ? PRIORITY_HIGH : PRIORITY_DEFAULT;
+    }
+
     /**
      * Set a custom background color for the GFMinimalNotification
      *
@@ -830,7 +1070,8 @@ public class GFMinimalNotification {
     }
 
     /**
-     * Set a custom tint color for the helper and action image views
+     * Set a custom tint color for the helper and action image views. Images set from resources are
+     * tinted once and shared with every notification showing them in the same color.
      *
      * @param customIconTintColor The color to be set as the tint for the helper and action image views
      */
@@ -839,8 +1080,7 @@ public class GFMinimalNotification {
             throw new IllegalStateException("You may not apply a custom icon tint color when using a custom view");
         }
 
-        mView.getHelperImageView().setColorFilter(customIconTintColor);
-        mView.getActionImageView().setColorFilter(customIconTintColor);
+        mView.setIconTintColor(customIconTintColor);
         return this;
     }
 
@@ -860,11 +1100,200 @@ public class GFMinimalNotification {
         return mView.hasCustomView();
     }
 
+    /**
+     * Set whether this notification may be shown again once dismissed. A reusable notification
+     * keeps its view, and everything set on it, for as long as it is referenced. Otherwise its view
+     * is handed back to be reused by future notifications once it has been dismissed, after which
+     * this instance may no longer be shown or updated. Defaults to true, make notifications that are
+     * shown once and forgotten not reusable so that their view is recycled.
+     *
+     * @param reusable false to recycle the view of this notification once dismissed
+     * @see #reset()
+     */
+    @NonNull
+    public GFMinimalNotification setReusable(boolean reusable) {
+        mReusable = reusable;
+        if (!reusable && mDismissed) {
+            // Already hidden, hand the view back now rather than once hidden again
+            sHandler.sendMessage(sHandler.obtainMessage(MSG_DISCARD, this));
+        }
+        return this;
+    }
+
+    /**
+     * Return whether this notification may be shown again once dismissed
+     *
+     * @see #setReusable(boolean)
+     */
+    public boolean isReusable() {
+        return mReusable;
+    }
+
+    /**
+     * Set whether the text of this notification is shaped and broken into lines on a background
+     * thread as soon as it is set, so that measuring it on the main thread when shown reuses the
+     * result. Set the text appearance before the text, precomputed with another style the result is
+     * thrown away. Worth it for long messages, especially in scripts costly to shape such as CJK or
+     * Arabic. Does nothing for custom views. Defaults to false.
+     *
+     * <p>Requires API 28 for the default renderer. The {@link #RENDERER_LITE lite renderer} is
+     * precomputed on every API level once its view has been laid out before, as recycled views are.
+     *
+     * @param precomputeText true to precompute the text of this notification
+     */
+    @NonNull
+    public GFMinimalNotification setPrecomputeText(boolean precomputeText) {
+        mPrecomputeText = precomputeText;
+        precomputeText();
+        return this;
+    }
+
+    /**
+     * Return whether the text of this notification is precomputed on a background thread
+     *
+     * @see #setPrecomputeText(boolean)
+     */
+    public boolean isPrecomputeText() {
+        return mPrecomputeText;
+    }
+
+    /**
+     * Clear the text, action and images of this notification, restoring the text styling of its
+     * theme, so that it may be filled in again before being shown. Does nothing for custom views.
+     */
+    @NonNull
+    public GFMinimalNotification reset() {
+        if (mViewRecycled) {
+            throw new IllegalStateException("A GFMinimalNotification may not be updated once its view has been recycled");
+        }
+        mText = null;
+        mCoalescedText = null;
+        mRepeatCount = 1;
+        if (!mView.hasCustomView()) {
+            mView.resetContent();
+            resolveThemeTextAttributes();
+        }
+        return this;
+    }
+
     /**
      * Show the {@link GFMinimalNotification}.
+     *
+     * <p>Once dismissed, the notification may be shown again, unless it was made not
+     * {@link #setReusable(boolean) reusable}, in which case its view is recycled for use by future
+     * notifications and this instance may no longer be shown or updated.
      */
     public void show() {
-        GFMinimalNotificationManager.getInstance().show(mDuration, mManagerCallback);
+        checkNotRecycled();
+        mDismissed = false;
+        mManager.show(mRecord, mDuration, mType, getPriority(), mCoalescingKey);
+    }
+
+    /**
+     * Show every given {@link GFMinimalNotification} at once. Notifications sharing a parent are
+     * queued together, in the order given, and the first of them is only shown once all of them have
+     * been queued. Cheaper than calling {@link #show()} on each in turn.
+     *
+     * @param notifications The notifications to show
+     */
+    public static void showAll(@NonNull List<GFMinimalNotification> notifications) {
+        showAll(notifications, null);
+    }
+
+    /**
+     * Show every given {@link GFMinimalNotification} at once, see {@link #showAll(List)}.
+     *
+     * <p>If a summary is given, the notifications sharing a parent are collapsed into one. The most
+     * important of them not using a custom view, the first on ties, is shown with the summary as its
+     * text. The others are dropped without being shown, their callback is told they were dismissed
+     * with {@link Callback#DISMISS_EVENT_CONSECUTIVE}. Notifications all using custom views are each
+     * shown as they are.
+     *
+     * @param notifications The notifications to show
+     * @param summary       The text to show in place of more than one notification, for example
+     *                      "12 items synced", or null to show each of them
+     */
+    public static void showAll(@NonNull List<GFMinimalNotification> notifications,
+                               @Nullable CharSequence summary) {
+        final int size = notifications.size();
+        for (int i = 0; i < size; i++) {
+            notifications.get(i).checkNotRecycled();
+        }
+
+        // Every group is handed to its manager as a range of the same array, grouped in the order
+        // given, everything shown within the same parent goes to the same manager
+        final GFMinimalNotificationManager.Record[] records = new GFMinimalNotificationManager.Record[size];
+        int grouped = 0;
+        int handled = 0;
+        for (int i = 0; i < size && handled < size; i++) {
+            final GFMinimalNotificationManager manager = notifications.get(i).mManager;
+            if (isGroupedBefore(notifications, i, manager)) {
+                continue;
+            }
+
+            GFMinimalNotification carrier = null;
+            int count = 0;
+            for (int j = i; j < size; j++) {
+                final GFMinimalNotification notification = notifications.get(j);
+                if (notification.mManager == manager) {
+                    count++;
+                    if (!notification.mView.hasCustomView()
+                            && (carrier == null || notification.getPriority() > carrier.getPriority())) {
+                        carrier = notification;
+                    }
+                }
+            }
+            handled += count;
+            final boolean summarize = summary != null && count > 1 && carrier != null;
+            if (summarize) {
+                carrier.setText(summary);
+            }
+
+            final int start = grouped;
+            for (int j = i; j < size; j++) {
+                final GFMinimalNotification notification = notifications.get(j);
+                if (notification.mManager != manager) {
+                    continue;
+                }
+                if (summarize && notification != carrier) {
+                    notification.dropSummarized();
+                    continue;
+                }
+                notification.mDismissed = false;
+                notification.mRecord.stage(notification.mDuration, notification.mType,
+                        notification.getPriority(), notification.mCoalescingKey);
+                records[grouped++] = notification.mRecord;
+            }
+            manager.showAll(records, start, grouped - start);
+        }
+    }
+
+    private static boolean isGroupedBefore(List<GFMinimalNotification> notifications, int index,
+                                           GFMinimalNotificationManager manager) {
+        for (int i = 0; i < index; i++) {
+            if (notifications.get(i).mManager == manager) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Precompute the text if asked to, see {@link #setPrecomputeText(boolean)}. Text already
+     * precomputed is left as it is.
+     */
+    private void precomputeText() {
+        // Once on screen the text has already been laid out
+        if (mPrecomputeText && mText != null && !mView.hasCustomView() && !ViewCompat.isAttachedToWindow(mView)) {
+            GFMinimalNotificationTextPrecomputer.precompute(mView);
+        }
+    }
+
+    private void checkNotRecycled() {
+        if (mViewRecycled) {
+            throw new IllegalStateException("A GFMinimalNotification may not be shown again once it has been dismissed, "
+                    + "unless it is reusable");
+        }
     }
 
     /**
@@ -874,6 +1303,113 @@ public class GFMinimalNotification {
         dispatchDismiss(Callback.DISMISS_EVENT_MANUAL);
     }
 
+    /**
+     * Set the maximum number of notifications waiting to be shown behind the current one. Each
+     * parent notifications are shown within has a queue of its own. Defaults to 1, meaning a new
+     * notification replaces the one waiting.
+     *
+     * @param capacity The maximum number of waiting notifications
+     * @see #setQueueOverflowPolicy
+     */
+    public static void setQueueCapacity(int capacity) {
+        GFMinimalNotificationManager.setQueueCapacity(capacity);
+    }
+
+    /**
+     * Set the maximum number of notifications shown at once within the same parent. Notifications
+     * shown together are stacked, the newest nearest the edge they slide in from. Defaults to 1,
+     * meaning each notification replaces the one shown.
+     *
+     * @param maxVisible The maximum number of notifications shown at once
+     */
+    public static void setMaxVisible(int maxVisible) {
+        GFMinimalNotificationManager.setMaxVisible(maxVisible);
+    }
+
+    /**
+     * Set how a notification is made room for once the queue is full
+     *
+     * @param overflowPolicy Either one of the predefined policies:
+     *                       {@link #OVERFLOW_DROP_OLDEST}, {@link #OVERFLOW_DROP_LOWEST_PRIORITY}, or
+     *                       {@link #OVERFLOW_COALESCE}
+     * @see #setQueueCapacity
+     */
+    public static void setQueueOverflowPolicy(@OverflowPolicy int overflowPolicy) {
+        GFMinimalNotificationManager.setOverflowPolicy(overflowPolicy);
+    }
+
+    /**
+     * Set how long after a notification was shown, or last merged with, that a notification with the
+     * same coalescing key is merged into it. Defaults to 5000 milliseconds.
+     *
+     * @param windowMs The window in milliseconds
+     * @see #setCoalescingKey(String)
+     */
+    public static void setCoalescingWindow(long windowMs) {
+        GFMinimalNotificationManager.setCoalescingWindow(windowMs);
+    }
+
+    /**
+     * Return the rate limiter shared by every notification, used to cap how many notifications of
+     * each type may be shown within a window of time.
+     */
+    @NonNull
+    public static GFMinimalNotificationRateLimiter getRateLimiter() {
+        return GFMinimalNotificationManager.getRateLimiter();
+    }
+
+    /**
+     * Set the maximum number of views, of dismissed notifications that were not
+     * {@link #setReusable(boolean) reusable}, retained per Context for reuse by future notifications. Defaults to 3, use 0 to disable recycling.
+     *
+     * @param maxRecycledViews The maximum number of views to retain
+     */
+    public static void setMaxRecycledViews(int maxRecycledViews) {
+        GFMinimalNotificationLayoutPool.setMaxPoolSize(maxRecycledViews);
+    }
+
+    /**
+     * Set how notifications made from now on render their helper image, message and action.
+     * Notifications using a custom view are unaffected. Defaults to {@link #RENDERER_DEFAULT}.
+     *
+     * @param renderer Either {@link #RENDERER_DEFAULT} or {@link #RENDERER_LITE}
+     */
+    public static void setRenderer(@Renderer int renderer) {
+        sRenderer = renderer;
+    }
+
+    /**
+     * Set a listener notified of each step every notification takes from being made to being
+     * dismissed, with the time of each step and the number of notifications waiting to be shown.
+     * Nothing is recorded while no listener is set.
+     *
+     * @param listener The listener, or null to remove it
+     */
+    public static void setEventListener(GFMinimalNotificationEventListener listener) {
+        sEventListener = listener;
+    }
+
+    /**
+     * Register the container notifications made from any view of the given Activity are shown in,
+     * skipping the search for a suitable parent. The container is forgotten once the Activity is
+     * destroyed.
+     *
+     * @param activity The Activity hosting the container
+     * @param host     The container to show notifications in, usually a {@link CoordinatorLayout}
+     */
+    public static void registerHost(@NonNull Activity activity, @NonNull ViewGroup host) {
+        GFMinimalNotificationParentCache.registerHost(activity, host);
+    }
+
+    /**
+     * Forget the container registered for the given Activity, if any
+     *
+     * @see #registerHost(Activity, ViewGroup)
+     */
+    public static void unregisterHost(@NonNull Activity activity) {
+        GFMinimalNotificationParentCache.unregisterHost(activity);
+    }
+
     /**
      * Set a callback to be called when this the visibility of this {@link GFMinimalNotification} changes.
      */
@@ -887,7 +1423,7 @@ public class GFMinimalNotification {
      * Return whether this {@link GFMinimalNotification} is currently being shown.
      */
     public boolean isShown() {
-        return GFMinimalNotificationManager.getInstance().isCurrent(mManagerCallback);
+        return mManager.isCurrent(mRecord);
     }
 
     /**
@@ -895,7 +1431,7 @@ public class GFMinimalNotification {
      * shown next.
      */
     public boolean isShownOrQueued() {
-        return GFMinimalNotificationManager.getInstance().isCurrentOrNext(mManagerCallback);
+        return mManager.isCurrentOrNext(mRecord);
     }
 
     private final GFMinimalNotificationManager.Callback mManagerCallback = new GFMinimalNotificationManager.Callback() {
@@ -908,9 +1444,143 @@ public class GFMinimalNotification {
         public void dismiss(int event) {
             sHandler.sendMessage(sHandler.obtainMessage(MSG_DISMISS, event, 0, GFMinimalNotification.this));
         }
+
+        @Override
+        public void remove() {
+            // Our host is going away, don't let the exit animation, if running, call back again
+            ViewCompat.animate(mView).setListener(null).cancel();
+            onViewHidden(Callback.DISMISS_EVENT_MANUAL);
+        }
+
+        @Override
+        public void coalesce(GFMinimalNotificationManager.Callback from, int repeatCount) {
+            mCoalescedText = from.getText();
+            sHandler.sendMessage(sHandler.obtainMessage(MSG_COALESCE, repeatCount, 0, GFMinimalNotification.this));
+        }
+
+        @Override
+        public void discard() {
+            discardView();
+        }
+
+        @Override
+        public void merged() {
+            // A duplicate made only to be merged, don't let its view go to waste
+            mReusable = false;
+            discardView();
+        }
+
+        @Override
+        public CharSequence getText() {
+            return mText;
+        }
+
+        @Override
+        public void onEvent(int event, int queueDepth) {
+            final GFMinimalNotificationEventListener listener = sEventListener;
+            if (listener != null) {
+                listener.onEvent(GFMinimalNotification.this, event, System.nanoTime(), queueDepth);
+            }
+        }
+    };
+
+    // Listeners reused by every show of this notification
+
+    private final GFMinimalNotificationLayout.OnAttachStateChangeListener mOnAttachStateChangeListener =
+            new GFMinimalNotificationLayout.OnAttachStateChangeListener() {
+                @Override
+                public void onViewAttachedToWindow(View v) {}
+
+                @Override
+                public void onViewDetachedFromWindow(View v) {
+                    if (isShownOrQueued()) {
+                        // If we haven't already been dismissed then this event is coming from a
+                        // non-user initiated action. Hence we need to make sure that we callback
+                        // and keep our state up to date. We need to post the call since removeView()
+                        // will call through to onDetachedFromWindow and thus overflow.
+                        sHandler.post(mOnDetachedRunnable);
+                    }
+                }
+            };
+
+    private final GFMinimalNotificationLayout.OnWindowStateChangeListener mOnWindowStateChangeListener =
+            new GFMinimalNotificationLayout.OnWindowStateChangeListener() {
+                @Override
+                public void onWindowFocusChanged(boolean hasWindowFocus) {
+                    updateTimeoutForWindow(GFMinimalNotificationManager.PAUSE_WINDOW_FOCUS, !hasWindowFocus);
+                }
+
+                @Override
+                public void onWindowVisibilityChanged(int visibility) {
+                    updateTimeoutForWindow(GFMinimalNotificationManager.PAUSE_WINDOW_HIDDEN,
+                            visibility != View.VISIBLE);
+                }
+            };
+
+    private final Runnable mOnDetachedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            onViewHidden(Callback.DISMISS_EVENT_MANUAL);
+        }
+    };
+
+    private final GFMinimalNotificationLayout.OnLayoutChangeListener mOnLayoutChangeListener =
+            new GFMinimalNotificationLayout.OnLayoutChangeListener() {
+                @Override
+                public void onLayoutChange(View view, int left, int top, int right, int bottom) {
+                    mView.setOnLayoutChangeListener(null);
+                    onViewLaidOut();
+                }
+            };
+
+    private final ViewPropertyAnimatorListenerAdapter mAnimateInListener = new ViewPropertyAnimatorListenerAdapter() {
+        @Override
+        public void onAnimationStart(View view) {
+            dispatchEvent(GFMinimalNotificationEventListener.EVENT_ANIMATION_START);
+            if (mAnimationMode == ANIMATION_MODE_CHILDREN) {
+                mView.animateChildrenIn(ANIMATION_DURATION - ANIMATION_FADE_DURATION,
+                        ANIMATION_FADE_DURATION);
+            }
+        }
+
+        @Override
+        public void onAnimationEnd(View view) {
+            onViewShown();
+        }
+    };
+
+    private final ViewPropertyAnimatorListenerAdapter mAnimateOutListener = new ViewPropertyAnimatorListenerAdapter() {
+        @Override
+        public void onAnimationStart(View view) {
+            if (mAnimationMode == ANIMATION_MODE_CHILDREN) {
+                mView.animateChildrenOut(0, ANIMATION_FADE_DURATION);
+            }
+        }
+
+        @Override
+        public void onAnimationEnd(View view) {
+            onViewHidden(mAnimateOutEvent);
+        }
     };
 
+    private void dispatchEvent(@GFMinimalNotificationEventListener.Event int event) {
+        final GFMinimalNotificationEventListener listener = sEventListener;
+        if (listener != null) {
+            listener.onEvent(this, event, System.nanoTime(),
+                    mManager.getQueueSize());
+        }
+    }
+
     private static ViewGroup findSuitableParent(View view) {
+        ViewGroup parent = GFMinimalNotificationParentCache.get(view);
+        if (parent == null) {
+            parent = walkToSuitableParent(view);
+            GFMinimalNotificationParentCache.put(view, parent);
+        }
+        return parent;
+    }
+
+    private static ViewGroup walkToSuitableParent(View view) {
         ViewGroup fallback = null;
         do {
             if (view instanceof CoordinatorLayout) {
@@ -939,137 +1609,120 @@ public class GFMinimalNotification {
     }
 
     private void dispatchDismiss(@Callback.DismissEvent int event) {
-        GFMinimalNotificationManager.getInstance().dismiss(mManagerCallback, event);
+        mManager.dismiss(mRecord, event);
     }
 
     private void showView() {
+        if (!mManager.isCurrent(mRecord)) {
+            // Removed along with our host before we got to it
+            return;
+        }
+        TraceCompat.beginSection("GFMinimalNotification#showView");
+        try {
+            attachView();
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private void attachView() {
         if (mView.getParent() == null) {
             final ViewGroup.LayoutParams lp = mView.getLayoutParams();
 
             if (lp instanceof CoordinatorLayout.LayoutParams) {
-                // If our LayoutParams are from a CoordinatorLayout, we'll setup our Behavior
-
-                final Behavior behavior = new Behavior();
-                behavior.setStartAlphaSwipeDistance(0.1f);
-                behavior.setEndAlphaSwipeDistance(0.6f);
-                behavior.setSwipeDirection(SwipeDismissBehavior.SWIPE_DIRECTION_START_TO_END);
-                behavior.setListener(new SwipeDismissBehavior.OnDismissListener() {
-                    @Override
-                    public void onDismiss(View view) {
-                        view.setVisibility(View.GONE);
-                        dispatchDismiss(Callback.DISMISS_EVENT_SWIPE);
-                    }
-
-                    @Override
-                    public void onDragStateChanged(int state) {
-                        switch (state) {
-                            case SwipeDismissBehavior.STATE_DRAGGING:
-                            case SwipeDismissBehavior.STATE_SETTLING:
-                                // If the view is being dragged or settling, cancel the timeout
-                                GFMinimalNotificationManager.getInstance().cancelTimeout(mManagerCallback);
-                                break;
-                            case SwipeDismissBehavior.STATE_IDLE:
-                                // If the view has been released and is idle, restore the timeout
-                                GFMinimalNotificationManager.getInstance().restoreTimeout(mManagerCallback);
-                                break;
-                        }
-                    }
-                });
+                // If our LayoutParams are from a CoordinatorLayout, we'll setup our Behavior. The
+                // layout keeps it for as long as it is shown within the same parent
+                Behavior behavior = (Behavior) mView.getSwipeBehavior(mTargetParent);
+                if (behavior == null) {
+                    behavior = new Behavior();
+                    behavior.setStartAlphaSwipeDistance(0.1f);
+                    behavior.setEndAlphaSwipeDistance(0.6f);
+                    behavior.setSwipeDirection(SwipeDismissBehavior.SWIPE_DIRECTION_START_TO_END);
+                    behavior.setListener(behavior);
+                    mView.setSwipeBehavior(behavior, mTargetParent);
+                }
+                behavior.mNotification = this;
                 ((CoordinatorLayout.LayoutParams) lp).setBehavior(behavior);
             }
 
             mTargetParent.addView(mView);
+            dispatchEvent(GFMinimalNotificationEventListener.EVENT_VIEW_ATTACHED);
         }
 
-        mView.setOnAttachStateChangeListener(new GFMinimalNotificationLayout.OnAttachStateChangeListener() {
-            @Override
-            public void onViewAttachedToWindow(View v) {}
-
-            @Override
-            public void onViewDetachedFromWindow(View v) {
-                if (isShownOrQueued()) {
-                    // If we haven't already been dismissed then this event is coming from a
-                    // non-user initiated action. Hence we need to make sure that we callback
-                    // and keep our state up to date. We need to post the call since removeView()
-                    // will call through to onDetachedFromWindow and thus overflow.
-                    sHandler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            onViewHidden(Callback.DISMISS_EVENT_MANUAL);
-                        }
-                    });
-                }
-            }
-        });
+        mView.setOnAttachStateChangeListener(mOnAttachStateChangeListener);
+        mView.setOnWindowStateChangeListener(mOnWindowStateChangeListener);
+        if (ViewCompat.isAttachedToWindow(mView)) {
+            // Don't let the timeout run out while nobody can see or interact with us
+            updateTimeoutForWindow(GFMinimalNotificationManager.PAUSE_WINDOW_FOCUS, !mView.hasWindowFocus());
+            updateTimeoutForWindow(GFMinimalNotificationManager.PAUSE_WINDOW_HIDDEN,
+                    mView.getWindowVisibility() != View.VISIBLE);
+        }
 
         if (ViewCompat.isLaidOut(mView)) {
-            if (shouldAnimate()) {
-                // If animations are enabled, animate it in
-                animateViewIn();
-            } else {
-                // Else if animations are disabled just call back now
-                onViewShown();
-            }
+            onViewLaidOut();
         } else {
             // Otherwise, add one of our layout change listeners and show it in when laid out
-            mView.setOnLayoutChangeListener(new GFMinimalNotificationLayout.OnLayoutChangeListener() {
-                @Override
-                public void onLayoutChange(View view, int left, int top, int right, int bottom) {
-                    mView.setOnLayoutChangeListener(null);
+            mView.setOnLayoutChangeListener(mOnLayoutChangeListener);
+        }
+    }
 
-                    if (shouldAnimate()) {
-                        // If animations are enabled, animate it in
-                        animateViewIn();
-                    } else {
-                        // Else if animations are disabled just call back now
-                        onViewShown();
-                    }
-                }
-            });
+    private void updateTimeoutForWindow(int reason, boolean pause) {
+        if (pause) {
+            mManager.pauseTimeout(mRecord, reason);
+        } else {
+            mManager.resumeTimeout(mRecord, reason);
+        }
+    }
+
+    private void onViewLaidOut() {
+        dispatchEvent(GFMinimalNotificationEventListener.EVENT_FIRST_LAYOUT);
+        GFMinimalNotificationStack.get(mTargetParent).add(mView, mDirection);
+        if (shouldAnimate()) {
+            // If animations are enabled, animate it in
+            animateViewIn();
+        } else {
+            // Else if animations are disabled just call back now
+            onViewShown();
         }
     }
 
     private void animateViewIn() {
-        ViewCompat.setTranslationY(mView, mDirection == DIRECTION_TOP ? -mView.getHeight() : mView.getHeight());
-        ViewCompat.animate(mView).translationY(0f)
-                .setInterpolator(FAST_OUT_SLOW_IN_INTERPOLATOR)
+        final float offset = mView.getStackOffset();
+        ViewCompat.setTranslationY(mView, offset + (mDirection == DIRECTION_TOP ? -mView.getHeight() : mView.getHeight()));
+        mView.setTransitioning(true);
+        final ViewPropertyAnimatorCompat animator = ViewCompat.animate(mView).translationY(offset);
+        if (mAnimationMode == ANIMATION_MODE_HARDWARE_LAYER) {
+            ViewCompat.setAlpha(mView, 0f);
+            animator.alpha(1f).withLayer();
+        }
+        animator.setInterpolator(FAST_OUT_SLOW_IN_INTERPOLATOR)
                 .setDuration(ANIMATION_DURATION)
-                .setListener(new ViewPropertyAnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationStart(View view) {
-                        mView.animateChildrenIn(ANIMATION_DURATION - ANIMATION_FADE_DURATION,
-                                ANIMATION_FADE_DURATION);
-                    }
-
-                    @Override
-                    public void onAnimationEnd(View view) {
-                        if (mCallback != null) {
-                            mCallback.onShown(GFMinimalNotification.this);
-                        }
-                        GFMinimalNotificationManager.getInstance().onShown(mManagerCallback);
-                    }
-                }).start();
+                .setListener(mAnimateInListener)
+                .start();
     }
 
-    private void animateViewOut(final int event) {
-        ViewCompat.animate(mView)
-                .translationY(mDirection == DIRECTION_TOP ? -mView.getHeight() : mView.getHeight())
-                .setInterpolator(FAST_OUT_SLOW_IN_INTERPOLATOR)
+    private void animateViewOut(int event) {
+        mView.setTransitioning(true);
+        final ViewPropertyAnimatorCompat animator = ViewCompat.animate(mView)
+                .translationY(mView.getStackOffset()
+                        + (mDirection == DIRECTION_TOP ? -mView.getHeight() : mView.getHeight()));
+        if (mAnimationMode == ANIMATION_MODE_HARDWARE_LAYER) {
+            animator.alpha(0f).withLayer();
+        }
+        mAnimateOutEvent = event;
+        animator.setInterpolator(FAST_OUT_SLOW_IN_INTERPOLATOR)
                 .setDuration(ANIMATION_DURATION)
-                .setListener(new ViewPropertyAnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationStart(View view) {
-                        mView.animateChildrenOut(0, ANIMATION_FADE_DURATION);
-                    }
-
-                    @Override
-                    public void onAnimationEnd(View view) {
-                        onViewHidden(event);
-                    }
-                }).start();
+                .setListener(mAnimateOutListener)
+                .start();
     }
 
     private void hideView(@Callback.DismissEvent final int event) {
+        if (!mManager.isCurrent(mRecord)) {
+            // Already removed along with our host
+            return;
+        }
+        // Let the notifications shown alongside close the gap while we leave
+        GFMinimalNotificationStack.get(mTargetParent).remove(mView);
         if (shouldAnimate() && mView.getVisibility() == View.VISIBLE) {
             animateViewOut(event);
         } else {
@@ -1078,25 +1731,136 @@ public class GFMinimalNotification {
         }
     }
 
+    /**
+     * Called once the view is in place, animated in or not
+     */
     private void onViewShown() {
-        GFMinimalNotificationManager.getInstance().onShown(mManagerCallback);
+        mView.setTransitioning(false);
+        // Move the notifications shown alongside out of the way
+        GFMinimalNotificationStack.get(mTargetParent).settle(mView);
+        dispatchEvent(GFMinimalNotificationEventListener.EVENT_ANIMATION_END);
         if (mCallback != null) {
             mCallback.onShown(this);
         }
+        mManager.onShown(mRecord);
     }
 
     private void onViewHidden(int event) {
+        final ViewGroup.LayoutParams lp = mView.getLayoutParams();
+        if (lp instanceof CoordinatorLayout.LayoutParams
+                && ((CoordinatorLayout.LayoutParams) lp).getBehavior() instanceof Behavior) {
+            // Let go of us, the behavior stays with the layout
+            ((Behavior) ((CoordinatorLayout.LayoutParams) lp).getBehavior()).mNotification = null;
+        }
         // First tell the Manager that it has been dismissed
-        GFMinimalNotificationManager.getInstance().onDismissed(mManagerCallback);
+        mManager.onDismissed(mRecord);
         // Now call the dismiss listener (if available)
         if (mCallback != null) {
             mCallback.onDismissed(this, event);
         }
         // Lastly, remove the view from the parent (if attached)
+        GFMinimalNotificationStack.get(mTargetParent).remove(mView);
         final ViewParent parent = mView.getParent();
         if (parent instanceof ViewGroup) {
             ((ViewGroup) parent).removeView(mView);
         }
+        dispatchEvent(GFMinimalNotificationEventListener.EVENT_DISMISSED);
+        mDismissed = true;
+        if (mReusable) {
+            prepareForReuse();
+        } else {
+            recycleView();
+        }
+    }
+
+    /**
+     * Return a reusable notification's view, and its repeat count, to the state it can be shown
+     * again from
+     */
+    private void prepareForReuse() {
+        if (mView.getParent() != null || isShownOrQueued()) {
+            // Shown again before we were done hiding
+            return;
+        }
+        mView.setOnLayoutChangeListener(null);
+        mView.setOnAttachStateChangeListener(null);
+        mView.setOnWindowStateChangeListener(null);
+        mView.resetTransientState();
+        if (mRepeatCount > 1) {
+            mRepeatCount = 1;
+            mCoalescedText = null;
+            if (!mView.hasCustomView()) {
+                updateMessageText();
+            }
+        }
+    }
+
+    private void onCoalesced(int repeatCount) {
+        mRepeatCount = repeatCount;
+        if (mCoalescedText != null) {
+            mText = mCoalescedText;
+            mCoalescedText = null;
+        }
+        if (!mView.hasCustomView()) {
+            updateMessageText();
+        }
+    }
+
+    /**
+     * Hand the view back to be reused, for a notification that will never be shown, such as one that
+     * failed to be built. May be called from any thread, the view is released on the main thread.
+     */
+    void recycle() {
+        mReusable = false;
+        discardView();
+    }
+
+    /**
+     * Called once we were folded into the summary of {@link #showAll(List, CharSequence)}, let the
+     * callback know on the main thread that we will not be shown
+     */
+    private void dropSummarized() {
+        mDismissed = true;
+        sHandler.sendMessage(sHandler.obtainMessage(MSG_SUMMARIZED, this));
+    }
+
+    private void onSummarized() {
+        if (mCallback != null) {
+            mCallback.onDismissed(this, Callback.DISMISS_EVENT_CONSECUTIVE);
+        }
+        recycleView();
+    }
+
+    /**
+     * Called once we were dropped without being shown, hand the view back on the main thread
+     */
+    private void discardView() {
+        mDismissed = true;
+        sHandler.sendMessage(sHandler.obtainMessage(MSG_DISCARD, this));
+    }
+
+    /**
+     * Hand the view back to be reused, once hidden, unless it was attached again or we are back in
+     * line to be shown
+     */
+    private void recycleView() {
+        if (!mReusable && mDismissed && !mViewRecycled && mView.getParent() == null && !isShownOrQueued()) {
+            mViewRecycled = GFMinimalNotificationLayoutPool.get(mContext).release(mView, mTargetParent);
+        }
+    }
+
+    private void updateMessageText() {
+        if (mRepeatCount > 1 && mText != null) {
+            // Isolate the message, spans and all, so its direction does not reorder the count around it
+            final CharSequence text = TextUtils.concat(FIRST_STRONG_ISOLATE, mText, POP_DIRECTIONAL_ISOLATE);
+            mView.setMessageText(TextUtils.expandTemplate(mContext.getResources().getQuantityText(
+                    R.plurals.gf_notification_repeated_message, mRepeatCount),
+                    text, NumberFormat.getIntegerInstance().format(mRepeatCount)));
+        } else {
+            mView.setMessageText(mText);
+        }
+        // Whatever was precomputed before no longer matches the text
+        precomputeText();
     }
 
     /**
@@ -1113,39 +1877,45 @@ public class GFMinimalNotification {
         switch (mType) {
             default:
             case TYPE_DEFAULT:
-                return COLOR_DEFAULT;
+                return mTheme.colorDefault;
             case TYPE_ERROR:
-                return COLOR_ERROR;
+                return mTheme.colorError;
             case TYPE_WARNING:
-                return COLOR_WARNING;
+                return mTheme.colorWarning;
         }
     }
 
     private void resolveThemesAttributes() {
-        TypedArray a = mContext.obtainStyledAttributes(R.styleable.GFMinimalNotificationTheme);
-        if (a != null) {
-            if (a.hasValue(R.styleable.GFMinimalNotificationTheme_gf_notification_type_default)) {
-                COLOR_DEFAULT = a.getColor(R.styleable.GFMinimalNotificationTheme_gf_notification_type_default, COLOR_DEFAULT);
-            }
-            if (a.hasValue(R.styleable.GFMinimalNotificationTheme_gf_notification_type_error)) {
-                COLOR_ERROR = a.getColor(R.styleable.GFMinimalNotificationTheme_gf_notification_type_error, COLOR_ERROR);
-            }
-            if (a.hasValue(R.styleable.GFMinimalNotificationTheme_gf_notification_type_warning)) {
-                COLOR_WARNING = a.getColor(R.styleable.GFMinimalNotificationTheme_gf_notification_type_warning, COLOR_WARNING);
-            }
-            if (a.hasValue(R.styleable.GFMinimalNotificationTheme_gf_notification_textAppearance)) {
-                setTextAppearance(a.getResourceId(R.styleable.GFMinimalNotificationTheme_gf_notification_textAppearance, -1));
-            }
-            if (a.hasValue(R.styleable.GFMinimalNotificationTheme_gf_notification_maxLines)) {
-                setMaxLines(a.getInt(R.styleable.GFMinimalNotificationTheme_gf_notification_maxLines, 2));
-            }
-            if (a.hasValue(R.styleable.GFMinimalNotificationTheme_gf_notification_direction)) {
-                DIRECTION_DEFAULT = a.getInt(R.styleable.GFMinimalNotificationTheme_gf_notification_direction, DIRECTION_DEFAULT);
-            }
-            a.recycle();
+        if (!mView.hasCustomView()) {
+            resolveThemeTextAttributes();
+        }
+        setDirection(mTheme.direction);
+    }
+
+    private void resolveThemeTextAttributes() {
+        if (mTheme.textAppearance != 0) {
+            setTextAppearance(mTheme.textAppearance);
         }
+        if (mTheme.maxLines != -1) {
+            setMaxLines(mTheme.maxLines);
+        }
+    }
 
-        setDirection(DIRECTION_DEFAULT == DIRECTION_TOP ? DIRECTION_TOP : DIRECTION_BOTTOM);
+    /**
+     * Fills in the custom view of a notification made from a layout resource, see
+     * {@link #make(View, int, CustomViewBinder)}. Custom views are recycled between notifications made
+     * from the same layout, so everything a notification shows should be set on every bind.
+     */
+    public interface CustomViewBinder {
+
+        /**
+         * Called on the thread the notification is made on, once its custom view has been inflated
+         * or recycled
+         *
+         * @param notification The notification being made
+         * @param customView   The root of the custom view layout
+         */
+        void onBindCustomView(GFMinimalNotification notification, View customView);
     }
 
     public interface OnActionClickListener {
@@ -1160,7 +1930,15 @@ public class GFMinimalNotification {
         boolean onActionClick(GFMinimalNotification notification);
     }
 
-    private final class Behavior extends SwipeDismissBehavior<GFMinimalNotificationLayout> {
+    /**
+     * Swipe to dismiss support, kept by the layout across the notifications it is shown for and
+     * bound to the one currently shown.
+     */
+    static final class Behavior extends SwipeDismissBehavior<GFMinimalNotificationLayout>
+            implements SwipeDismissBehavior.OnDismissListener {
+
+        private GFMinimalNotification mNotification;
+
         @Override
         public boolean canSwipeDismissView(@NonNull View child) {
             return child instanceof GFMinimalNotificationLayout;
@@ -1171,19 +1949,50 @@ public class GFMinimalNotification {
                                              MotionEvent event) {
             // We want to make sure that we disable any GFMinimalNotification timeouts if the user is
             // currently touching the GFMinimalNotification. We restore the timeout when complete
-            if (parent.isPointInChildBounds(child, (int) event.getX(), (int) event.getY())) {
+            if (mNotification != null
+                    && parent.isPointInChildBounds(child, (int) event.getX(), (int) event.getY())) {
                 switch (event.getActionMasked()) {
                     case MotionEvent.ACTION_DOWN:
-                        GFMinimalNotificationManager.getInstance().cancelTimeout(mManagerCallback);
+                        mNotification.mManager.pauseTimeout(mNotification.mRecord,
+                            GFMinimalNotificationManager.PAUSE_TOUCH);
                         break;
                     case MotionEvent.ACTION_UP:
                     case MotionEvent.ACTION_CANCEL:
-                        GFMinimalNotificationManager.getInstance().restoreTimeout(mManagerCallback);
+                        mNotification.mManager.resumeTimeout(mNotification.mRecord,
+                            GFMinimalNotificationManager.PAUSE_TOUCH);
                         break;
                 }
             }
 
             return super.onInterceptTouchEvent(parent, child, event);
         }
+
+        @Override
+        public void onDismiss(View view) {
+            view.setVisibility(View.GONE);
+            if (mNotification != null) {
+                mNotification.dispatchDismiss(Callback.DISMISS_EVENT_SWIPE);
+            }
+        }
+
+        @Override
+        public void onDragStateChanged(int state) {
+            if (mNotification == null) {
+                return;
+            }
+            switch (state) {
+                case SwipeDismissBehavior.STATE_DRAGGING:
+                case SwipeDismissBehavior.STATE_SETTLING:
+                    // If the view is being dragged or settling, cancel the timeout
+                    mNotification.mManager.pauseTimeout(mNotification.mRecord,
+                            GFMinimalNotificationManager.PAUSE_TOUCH);
+                    break;
+                case SwipeDismissBehavior.STATE_IDLE:
+                    // If the view has been released and is idle, restore the timeout
+                    mNotification.mManager.resumeTimeout(mNotification.mRecord,
+                            GFMinimalNotificationManager.PAUSE_TOUCH);
+                    break;
+            }
+        }
     }
 }
@@ -0,0 +1,574 @@
+package com.github.gfranks.minimal.notification;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.ColorInt;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.LayoutRes;
+import android.support.annotation.NonNull;
+import android.support.annotation.StringRes;
+import android.support.annotation.StyleRes;
+import android.view.InflateException;
+import android.view.View;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Collects the options of a {@link GFMinimalNotification} so that it may be built, and its view
+ * inflated, away from the main thread.
+ *
+ * <pre>
+ * new GFMinimalNotificationBuilder(view)
+ *         .setText("Synced")
+ *         .setType(GFMinimalNotification.TYPE_DEFAULT)
+ *         .buildAsync(new GFMinimalNotificationBuilder.OnBuildListener() {
+ *             public void onNotificationBuilt(GFMinimalNotification notification) {
+ *                 notification.show();
+ *             }
+ *
+ *             public void onBuildFailed(RuntimeException exception) {
+ *             }
+ *         });
+ * </pre>
+ *
+ * <p>Only the anchor view's hierarchy is read while building, it should not be modified until the
+ * notification has been built.
+ */
+public final class GFMinimalNotificationBuilder {
+
+    public interface OnBuildListener {
+
+        /**
+         * Called on the main thread once the notification has been built and is ready to be shown
+         *
+         * @param notification The notification built
+         */
+        void onNotificationBuilt(GFMinimalNotification notification);
+
+        /**
+         * Called on the main thread if the notification could not be built, on either thread
+         *
+         * @param exception The exception building the notification failed with
+         */
+        void onBuildFailed(RuntimeException exception);
+    }
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static ExecutorService sExecutor;
+
+    private final View mView;
+    private CharSequence mText;
+    private @StringRes int mTextResId;
+    private int mDuration = GFMinimalNotification.LENGTH_LONG;
+    private @GFMinimalNotification.Type int mType = GFMinimalNotification.TYPE_DEFAULT;
+    private @GFMinimalNotification.Direction int mDirection;
+    private @GFMinimalNotification.AnimationMode int mAnimationMode;
+    private @GFMinimalNotification.Priority int mPriority;
+    private boolean mHasPriority;
+    private @DrawableRes int mHelperImageResId;
+    private CharSequence mActionText;
+    private @StringRes int mActionTextResId;
+    private GFMinimalNotification.OnActionClickListener mActionListener;
+    private @DrawableRes int mActionImageResId;
+    private GFMinimalNotification.OnActionClickListener mActionImageListener;
+    private @StyleRes int mTextAppearance;
+    private int mMaxLines;
+    private @LayoutRes int mCustomViewResId;
+    private GFMinimalNotification.CustomViewBinder mCustomViewBinder;
+    private @ColorInt int mCustomBackgroundColor = -1;
+    private @ColorInt int mCustomIconTintColor;
+    private boolean mHasCustomIconTintColor;
+    private String mCoalescingKey;
+    private boolean mReusable = true;
+    private boolean mHasReusable;
+    private boolean mPrecomputeText;
+    private GFMinimalNotification.Callback mCallback;
+
+    /**
+     * @param view The view to find a parent from. See {@link GFMinimalNotification#make(View)}
+     */
+    public GFMinimalNotificationBuilder(@NonNull View view) {
+        mView = view;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setText(CharSequence)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setText(CharSequence text) {
+        mText = text;
+        mTextResId = 0;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setText(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setText(@StringRes int textResId) {
+        mTextResId = textResId;
+        mText = null;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setDuration(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setDuration(int duration) {
+        mDuration = duration;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setType(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setType(@GFMinimalNotification.Type int type) {
+        mType = type;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setDirection(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setDirection(@GFMinimalNotification.Direction int direction) {
+        mDirection = direction;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setAnimationMode(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setAnimationMode(@GFMinimalNotification.AnimationMode int animationMode) {
+        mAnimationMode = animationMode;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setPriority(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setPriority(@GFMinimalNotification.Priority int priority) {
+        mPriority = priority;
+        mHasPriority = true;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setHelperImage(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setHelperImage(@DrawableRes int resId) {
+        mHelperImageResId = resId;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setAction(CharSequence, GFMinimalNotification.OnActionClickListener)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setAction(CharSequence text,
+                                                  GFMinimalNotification.OnActionClickListener listener) {
+        mActionText = text;
+        mActionTextResId = 0;
+        mActionListener = listener;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setAction(int, GFMinimalNotification.OnActionClickListener)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setAction(@StringRes int resId,
+                                                  GFMinimalNotification.OnActionClickListener listener) {
+        mActionTextResId = resId;
+        mActionText = null;
+        mActionListener = listener;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setActionImage(int, GFMinimalNotification.OnActionClickListener)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setActionImage(@DrawableRes int resId,
+                                                       GFMinimalNotification.OnActionClickListener listener) {
+        mActionImageResId = resId;
+        mActionImageListener = listener;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setTextAppearance(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setTextAppearance(@StyleRes int resId) {
+        mTextAppearance = resId;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setMaxLines(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setMaxLines(int maxLines) {
+        mMaxLines = maxLines;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setCustomView(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setCustomView(@LayoutRes int customViewResId) {
+        return setCustomView(customViewResId, null);
+    }
+
+    /**
+     * See {@link GFMinimalNotification#make(View, int, GFMinimalNotification.CustomViewBinder)}. When
+     * built asynchronously, the binder is called on the background thread building the notification.
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setCustomView(@LayoutRes int customViewResId,
+                                                      GFMinimalNotification.CustomViewBinder binder) {
+        mCustomViewResId = customViewResId;
+        mCustomViewBinder = binder;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setCustomBackgroundColor(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setCustomBackgroundColor(@ColorInt int customBackgroundColor) {
+        mCustomBackgroundColor = customBackgroundColor;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setCustomIconTintColor(int)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setCustomIconTintColor(@ColorInt int customIconTintColor) {
+        mCustomIconTintColor = customIconTintColor;
+        mHasCustomIconTintColor = true;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setCoalescingKey(String)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setCoalescingKey(String coalescingKey) {
+        mCoalescingKey = coalescingKey;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setReusable(boolean)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setReusable(boolean reusable) {
+        mReusable = reusable;
+        mHasReusable = true;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setPrecomputeText(boolean)}. The text is precomputed once
+     * fully styled, when built asynchronously right away on the background thread building the
+     * notification.
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setPrecomputeText(boolean precomputeText) {
+        mPrecomputeText = precomputeText;
+        return this;
+    }
+
+    /**
+     * See {@link GFMinimalNotification#setCallback(GFMinimalNotification.Callback)}
+     */
+    @NonNull
+    public GFMinimalNotificationBuilder setCallback(GFMinimalNotification.Callback callback) {
+        mCallback = callback;
+        return this;
+    }
+
+    /**
+     * Build the notification on the calling thread. May be called from any thread.
+     */
+    @NonNull
+    public GFMinimalNotification build() {
+        final GFMinimalNotification notification;
+        if (mCustomViewResId != 0 && mCustomViewBinder != null) {
+            notification = GFMinimalNotification.make(mView, mCustomViewResId, mCustomViewBinder);
+        } else if (mCustomViewResId != 0) {
+            notification = GFMinimalNotification.make(mView, mCustomViewResId);
+        } else {
+            notification = GFMinimalNotification.make(mView);
+        }
+
+        try {
+            apply(notification);
+        } catch (RuntimeException exception) {
+            // Don't lose the view along with the notification, it may have come from the pool
+            notification.recycle();
+            throw exception;
+        }
+        return notification;
+    }
+
+    private void apply(GFMinimalNotification notification) {
+        if (!notification.isUsingCustomView()) {
+            if (mTextAppearance != 0) {
+                notification.setTextAppearance(mTextAppearance);
+            }
+            if (mMaxLines > 0) {
+                notification.setMaxLines(mMaxLines);
+            }
+            if (mTextResId != 0) {
+                notification.setText(mTextResId);
+            } else if (mText != null) {
+                notification.setText(mText);
+            }
+            if (mHelperImageResId != 0) {
+                notification.setHelperImage(mHelperImageResId);
+            }
+            if (mActionImageResId != 0) {
+                notification.setActionImage(mActionImageResId, mActionImageListener);
+            }
+            if (mActionTextResId != 0) {
+                notification.setAction(mActionTextResId, mActionListener);
+            } else if (mActionText != null) {
+                notification.setAction(mActionText, mActionListener);
+            }
+            if (mHasCustomIconTintColor) {
+                notification.setCustomIconTintColor(mCustomIconTintColor);
+            }
+        }
+
+        notification.setDuration(mDuration);
+        notification.setType(mType);
+        if (mDirection != 0) {
+            notification.setDirection(mDirection);
+        }
+        notification.setAnimationMode(mAnimationMode);
+        if (mHasPriority) {
+            notification.setPriority(mPriority);
+        }
+        if (mCustomBackgroundColor != -1) {
+            notification.setCustomBackgroundColor(mCustomBackgroundColor);
+        }
+        notification.setCoalescingKey(mCoalescingKey);
+        if (mHasReusable) {
+            notification.setReusable(mReusable);
+        }
+        notification.setPrecomputeText(mPrecomputeText);
+        notification.setCallback(mCallback);
+    }
+
+    /**
+     * Build the notification, inflating its view, on a background thread. Should a view refuse to be
+     * inflated off the main thread, the notification is built on the main thread instead, in which
+     * case the main thread must not be blocked waiting on the Future returned.
+     *
+     * @param listener Notified on the main thread once the notification is built, or could not be,
+     *                 may be null
+     * @return a Future holding the notification once built. Cancelling it before the notification
+     * is built hands its view back to be reused, the listener is then not notified.
+     */
+    @NonNull
+    public Future<GFMinimalNotification> buildAsync(final OnBuildListener listener) {
+        final BuildFuture future = new BuildFuture();
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isCancelled()) {
+                    return;
+                }
+                final GFMinimalNotification notification;
+                try {
+                    notification = build();
+                } catch (InflateException exception) {
+                    // Some views may only be created on the main thread, such as those creating a
+                    // Handler, build it there instead. A layout that is broken fails there as well.
+                    sMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            buildOnMainThread(future, listener);
+                        }
+                    });
+                    return;
+                } catch (RuntimeException exception) {
+                    deliverFailure(future, listener, exception);
+                    return;
+                }
+                deliver(future, listener, notification);
+            }
+        });
+        return future;
+    }
+
+    private void buildOnMainThread(BuildFuture future, OnBuildListener listener) {
+        if (future.isCancelled()) {
+            return;
+        }
+        final GFMinimalNotification notification;
+        try {
+            notification = build();
+        } catch (RuntimeException exception) {
+            deliverFailure(future, listener, exception);
+            return;
+        }
+        deliver(future, listener, notification);
+    }
+
+    private static void deliver(BuildFuture future, final OnBuildListener listener,
+                                final GFMinimalNotification notification) {
+        if (!future.complete(notification)) {
+            // Cancelled while it was being built
+            notification.recycle();
+            return;
+        }
+        if (listener != null) {
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onNotificationBuilt(notification);
+                }
+            });
+        }
+    }
+
+    private static void deliverFailure(BuildFuture future, final OnBuildListener listener,
+                                       final RuntimeException exception) {
+        if (future.fail(exception) && listener != null) {
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onBuildFailed(exception);
+                }
+            });
+        }
+    }
+
+    private static void runOnMainThread(Runnable runnable) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            runnable.run();
+        } else {
+            sMainHandler.post(runnable);
+        }
+    }
+
+    static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "GFMinimalNotificationBuilder");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    /**
+     * The notification being built, completed by whichever thread ends up building it
+     */
+    private static final class BuildFuture implements Future<GFMinimalNotification> {
+
+        private final CountDownLatch mDone = new CountDownLatch(1);
+        private GFMinimalNotification mNotification;
+        private Throwable mFailure;
+        private boolean mCancelled;
+
+        /**
+         * @return false if the Future was cancelled in the meantime
+         */
+        synchronized boolean complete(GFMinimalNotification notification) {
+            if (isDone()) {
+                return false;
+            }
+            mNotification = notification;
+            mDone.countDown();
+            return true;
+        }
+
+        /**
+         * @return false if the Future was cancelled in the meantime
+         */
+        synchronized boolean fail(Throwable failure) {
+            if (isDone()) {
+                return false;
+            }
+            mFailure = failure;
+            mDone.countDown();
+            return true;
+        }
+
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            if (isDone()) {
+                return false;
+            }
+            mCancelled = true;
+            mDone.countDown();
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return mDone.getCount() == 0;
+        }
+
+        @Override
+        public GFMinimalNotification get() throws InterruptedException, ExecutionException {
+            mDone.await();
+            return getResult();
+        }
+
+        @Override
+        public GFMinimalNotification get(long timeout, @NonNull TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!mDone.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private synchronized GFMinimalNotification getResult() throws ExecutionException {
+            if (mCancelled) {
+                throw new CancellationException();
+            }
+            if (mFailure != null) {
+                throw new ExecutionException(mFailure);
+            }
+            return mNotification;
+        }
+    }
+}
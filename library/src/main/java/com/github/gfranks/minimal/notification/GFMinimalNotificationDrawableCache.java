@@ -0,0 +1,122 @@
+package com.github.gfranks.minimal.notification;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.PorterDuff;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.DrawableRes;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.graphics.drawable.DrawableCompat;
+import android.support.v4.util.LruCache;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Keeps the helper and action images recently resolved from resources, already tinted, so that
+ * repeated notifications showing the same icon share its bitmap, and vector icons are inflated once.
+ * Entries are keyed by resource id, tint, display density, UI mode and theme, so that switching to
+ * night mode resolves the image again from the resources for that mode, and colors a vector takes
+ * from theme attributes are never handed to an Activity using another theme.
+ *
+ * <p>Each image handed out is a new drawable sharing the cached constant state, it must not be
+ * mutated in ways meant for it alone. Safe to use from any thread.
+ */
+final class GFMinimalNotificationDrawableCache {
+
+    private static final int MAX_SIZE = 32;
+
+    private static final LruCache<Key, Drawable.ConstantState> sCache = new LruCache<>(MAX_SIZE);
+
+    private GFMinimalNotificationDrawableCache() {
+    }
+
+    /**
+     * Return the drawable resource, tinted with the given color if any
+     *
+     * @param hasTint Whether to tint the drawable, with SRC_ATOP as icon color filters are applied
+     * @throws android.content.res.Resources.NotFoundException if the resource does not exist
+     */
+    static Drawable get(Context context, @DrawableRes int resId, int tint, boolean hasTint) {
+        final Resources resources = context.getResources();
+        final Key key = new Key(resId, hasTint ? tint : 0, hasTint, resources.getDisplayMetrics().densityDpi,
+                resources.getConfiguration().uiMode, context.getTheme());
+        final Drawable.ConstantState state = sCache.get(key);
+        if (state != null) {
+            return state.newDrawable(resources);
+        }
+
+        Drawable drawable = ContextCompat.getDrawable(context, resId);
+        if (drawable == null) {
+            return null;
+        }
+        if (hasTint) {
+            // Tint a state of its own, not the one shared through the Resources' cache
+            drawable = DrawableCompat.wrap(drawable.mutate());
+            DrawableCompat.setTint(drawable, tint);
+            DrawableCompat.setTintMode(drawable, PorterDuff.Mode.SRC_ATOP);
+        }
+        final Drawable.ConstantState resolved = drawable.getConstantState();
+        if (resolved == null) {
+            return drawable;
+        }
+        sCache.put(key, resolved);
+        // Hand out a drawable like any future hit would get, leaving the cached one untouched
+        return resolved.newDrawable(resources);
+    }
+
+    private static final class Key {
+
+        private final int mResId;
+        private final int mTint;
+        private final boolean mHasTint;
+        private final int mDensity;
+        private final int mUiMode;
+        // Weakly held, the cache must not keep an Activity's theme around. Themes compare equal when
+        // built from the same styles from API 23 on, by identity before
+        private final WeakReference<Resources.Theme> mTheme;
+        private final int mThemeHash;
+
+        Key(int resId, int tint, boolean hasTint, int density, int uiMode, Resources.Theme theme) {
+            mResId = resId;
+            mTint = tint;
+            mHasTint = hasTint;
+            mDensity = density;
+            mUiMode = uiMode;
+            mTheme = new WeakReference<>(theme);
+            mThemeHash = theme != null ? theme.hashCode() : 0;
+        }
+
+        private boolean hasSameTheme(Key key) {
+            final Resources.Theme theme = mTheme.get();
+            final Resources.Theme other = key.mTheme.get();
+            // A theme that was collected matches nothing, the entry is left to fall out of the cache
+            return theme == null ? other == null && mThemeHash == 0 && key.mThemeHash == 0
+                    : theme.equals(other);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return mResId == key.mResId && mTint == key.mTint && mHasTint == key.mHasTint
+                    && mDensity == key.mDensity && mUiMode == key.mUiMode && mThemeHash == key.mThemeHash
+                    && hasSameTheme(key);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mResId;
+            result = 31 * result + mTint;
+            result = 31 * result + (mHasTint ? 1 : 0);
+            result = 31 * result + mDensity;
+            result = 31 * result + mUiMode;
+            result = 31 * result + mThemeHash;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.gfranks.minimal.notification;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Notified of each step a notification takes from being made to being dismissed, for measuring how
+ * long notifications wait to be shown and take to become visible.
+ *
+ * <p>Installed through {@link GFMinimalNotification#setEventListener(GFMinimalNotificationEventListener)}.
+ * Events are delivered on the thread they happen on, which is the main thread for every event
+ * but {@link #EVENT_MADE}. Nothing is recorded while no listener is installed.
+ */
+public interface GFMinimalNotificationEventListener {
+
+    /**
+     * @hide
+     */
+    @IntDef({EVENT_MADE, EVENT_ENQUEUED, EVENT_DEQUEUED, EVENT_VIEW_ATTACHED, EVENT_FIRST_LAYOUT,
+            EVENT_ANIMATION_START, EVENT_ANIMATION_END, EVENT_TIMEOUT, EVENT_DISMISSED})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Event {}
+
+    /** The notification was made, on the thread it was made on */
+    int EVENT_MADE = 0;
+    /** The notification was queued to be shown */
+    int EVENT_ENQUEUED = 1;
+    /** The notification left the queue to be shown */
+    int EVENT_DEQUEUED = 2;
+    /** The notification's view was added to its parent */
+    int EVENT_VIEW_ATTACHED = 3;
+    /** The notification's view was laid out and is about to be shown */
+    int EVENT_FIRST_LAYOUT = 4;
+    /** The notification started animating in */
+    int EVENT_ANIMATION_START = 5;
+    /** The notification is fully visible, sent straight after EVENT_FIRST_LAYOUT when not animated */
+    int EVENT_ANIMATION_END = 6;
+    /** The notification's duration ran out */
+    int EVENT_TIMEOUT = 7;
+    /** The notification was hidden and removed */
+    int EVENT_DISMISSED = 8;
+
+    /**
+     * @param notification   The notification the event happened to
+     * @param event          The event
+     * @param timestampNanos When the event happened, from {@link System#nanoTime()}
+     * @param queueDepth     The number of notifications waiting to be shown at the time
+     */
+    void onEvent(GFMinimalNotification notification, @Event int event, long timestampNanos, int queueDepth);
+}
@@ -1,28 +1,75 @@
 package com.github.gfranks.minimal.notification;
 
 import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.support.annotation.DrawableRes;
 import android.support.annotation.LayoutRes;
+import android.support.annotation.StyleRes;
+import android.support.design.widget.CoordinatorLayout;
 import android.support.v4.view.ViewCompat;
+import android.text.TextUtils;
 import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewStub;
 import android.widget.Button;
+import android.widget.FrameLayout;
 import android.widget.ImageButton;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.RelativeLayout;
 import android.widget.TextView;
 
+import java.lang.ref.WeakReference;
+
 public class GFMinimalNotificationLayout extends LinearLayout {
 
+    // The helper image and action views are only inflated from their stubs once first used, most
+    // notifications show nothing but their message
     private ImageView mHelperImageView;
     private TextView mMessageView;
     private Button mActionTextView;
     private ImageButton mActionImageView;
+    private ViewStub mHelperImageStub;
+    private ViewStub mActionTextStub;
+    private ViewStub mActionImageStub;
+    private OnClickListener mActionImageListener;
+    // Images set from resources come tinted from the drawable cache, rather than through a color
+    // filter of their own, and are resolved again should the tint change
+    private @DrawableRes int mHelperImageResId;
+    private @DrawableRes int mActionImageResId;
+    private int mIconTintColor;
+    private boolean mHasIconTintColor;
+    // Draws the content in place of the views above when the lite renderer is used
+    private GFMinimalNotificationLiteView mLiteView;
 
     private int mMaxWidth;
     private int mMaxInlineActionWidth;
     private boolean mHasCustomView;
+    // The layout the custom view was inflated from, if any, such layouts are pooled by it
+    private @LayoutRes int mCustomViewResId;
+    private boolean mCustomViewBound;
+
+    // Message paddings derived from the display density, kept rather than computed every measure
+    private int mMultiLineVPadding;
+    private int mSingleLineVPadding;
+
+    // Inflated text styling, restored when the layout is recycled
+    private ColorStateList mDefaultMessageTextColors;
+    private float mDefaultMessageTextSize;
+    private Typeface mDefaultMessageTypeface;
+    private int mDefaultMessageMaxLines;
+    private ColorStateList mDefaultActionTextColors;
+    private float mDefaultActionTextSize;
+    private Typeface mDefaultActionTypeface;
 
     interface OnLayoutChangeListener {
         void onLayoutChange(View view, int left, int top, int right, int bottom);
@@ -33,8 +80,25 @@ public class GFMinimalNotificationLayout extends LinearLayout {
         void onViewDetachedFromWindow(View v);
     }
 
+    interface OnWindowStateChangeListener {
+        void onWindowFocusChanged(boolean hasWindowFocus);
+        void onWindowVisibilityChanged(int visibility);
+    }
+
     private OnLayoutChangeListener mOnLayoutChangeListener;
     private OnAttachStateChangeListener mOnAttachStateChangeListener;
+    private OnWindowStateChangeListener mOnWindowStateChangeListener;
+
+    // Reused each time the layout is shown within the same CoordinatorLayout, its drag helper is
+    // bound to that parent
+    private CoordinatorLayout.Behavior mSwipeBehavior;
+    private WeakReference<ViewGroup> mSwipeBehaviorParent;
+
+    // Where the layout rests within a stack of notifications shown at once
+    private float mStackOffset;
+    private @GFMinimalNotification.Direction int mStackDirection = GFMinimalNotification.DIRECTION_BOTTOM;
+    // Whether the layout is animating in or out, the stack leaves it be until it is done
+    private boolean mTransitioning;
 
     public GFMinimalNotificationLayout(Context context) {
         this(context, null);
@@ -52,27 +116,39 @@ public class GFMinimalNotificationLayout extends LinearLayout {
         }
         a.recycle();
 
+        updateMessagePaddings();
         setClickable(true);
 
-        LayoutInflater.from(context).inflate(R.layout.layout_minimal_notification_include, this);
-
+        // The children are added by whoever asks for the layout, see inflateDefaultChildren(),
+        // useLiteRenderer() and updateWithCustomView(). A layout inflated from XML, or constructed,
+        // by anyone else gets the default children once first measured
         ViewCompat.setAccessibilityLiveRegion(this,
                 ViewCompat.ACCESSIBILITY_LIVE_REGION_POLITE);
         ViewCompat.setImportantForAccessibility(this,
                 ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_YES);
     }
 
-    @Override
-    protected void onFinishInflate() {
-        super.onFinishInflate();
-        if (!mHasCustomView) {
-            mHelperImageView = (ImageView) findViewById(R.id.notification_helper_image);
-            mMessageView = (TextView) findViewById(R.id.notification_text);
-            mActionTextView = (Button) findViewById(R.id.notification_action_text);
-            mActionImageView = (ImageButton) findViewById(R.id.notification_action_image);
-        }
+    /**
+     * Inflate the default message child, and the stubs of the helper image and action children.
+     * Skipped altogether for custom views and the lite renderer, which bring children of their own.
+     */
+    void inflateDefaultChildren() {
+        LayoutInflater.from(getContext()).inflate(R.layout.layout_minimal_notification_include, this);
+
+        mMessageView = (TextView) findViewById(R.id.notification_text);
+        mHelperImageStub = (ViewStub) findViewById(R.id.notification_helper_image_stub);
+        mActionTextStub = (ViewStub) findViewById(R.id.notification_action_text_stub);
+        mActionImageStub = (ViewStub) findViewById(R.id.notification_action_image_stub);
+
+        mDefaultMessageTextColors = mMessageView.getTextColors();
+        mDefaultMessageTextSize = mMessageView.getTextSize();
+        mDefaultMessageTypeface = mMessageView.getTypeface();
+        mDefaultMessageMaxLines = mMessageView.getMaxLines();
     }
 
+    /**
+     * Return the helper image view, or null if no helper image was ever set
+     */
     ImageView getHelperImageView() {
         return mHelperImageView;
     }
@@ -81,33 +157,490 @@ public class GFMinimalNotificationLayout extends LinearLayout {
         return mMessageView;
     }
 
+    /**
+     * Return the action text view, or null if no action text, or styling for it, was ever set
+     */
     Button getActionTextView() {
         return mActionTextView;
     }
 
+    /**
+     * Return the action image view, or null if no action image was ever set
+     */
     ImageButton getActionImageView() {
         return mActionImageView;
     }
 
+    private ImageView obtainHelperImageView() {
+        if (mHelperImageView == null) {
+            mHelperImageView = (ImageView) mHelperImageStub.inflate();
+            mHelperImageStub = null;
+        }
+        return mHelperImageView;
+    }
+
+    private Button obtainActionTextView() {
+        if (mActionTextView == null) {
+            mActionTextView = (Button) mActionTextStub.inflate();
+            mActionTextStub = null;
+            mDefaultActionTextColors = mActionTextView.getTextColors();
+            mDefaultActionTextSize = mActionTextView.getTextSize();
+            mDefaultActionTypeface = mActionTextView.getTypeface();
+        }
+        return mActionTextView;
+    }
+
+    private ImageButton obtainActionImageView() {
+        if (mActionImageView == null) {
+            mActionImageView = (ImageButton) mActionImageStub.inflate();
+            mActionImageStub = null;
+        }
+        return mActionImageView;
+    }
+
+    GFMinimalNotificationLiteView getLiteView() {
+        return mLiteView;
+    }
+
+    /**
+     * Use a single view drawing the content itself in place of the default children
+     */
+    void useLiteRenderer() {
+        clearChildren();
+        mLiteView = new GFMinimalNotificationLiteView(getContext());
+        addView(mLiteView, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+    }
+
+    boolean isLite() {
+        return mLiteView != null;
+    }
+
+    CharSequence getMessageText() {
+        return mLiteView != null ? mLiteView.getText() : mMessageView.getText();
+    }
+
+    void setMessageText(CharSequence text) {
+        if (mLiteView != null) {
+            mLiteView.setText(text);
+        } else {
+            mMessageView.setText(text);
+        }
+    }
+
+    void setMessageTextColor(ColorStateList colors) {
+        if (mLiteView != null) {
+            mLiteView.setTextColor(colors);
+        } else {
+            mMessageView.setTextColor(colors);
+        }
+    }
+
+    void setMessageTextSize(int unit, float size) {
+        if (mLiteView != null) {
+            mLiteView.setTextSize(unit, size);
+        } else {
+            mMessageView.setTextSize(unit, size);
+        }
+    }
+
+    void setMessageTypeface(Typeface typeface) {
+        if (mLiteView != null) {
+            mLiteView.setTypeface(typeface, 0);
+        } else {
+            mMessageView.setTypeface(typeface);
+        }
+    }
+
+    void setMessageTypeface(Typeface typeface, int style) {
+        if (mLiteView != null) {
+            mLiteView.setTypeface(typeface, style);
+        } else {
+            mMessageView.setTypeface(typeface, style);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    void setMessageTextAppearance(@StyleRes int resId) {
+        if (mLiteView != null) {
+            mLiteView.setTextAppearance(resId);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            mMessageView.setTextAppearance(resId);
+        } else {
+            mMessageView.setTextAppearance(getContext(), resId);
+        }
+    }
+
+    void setMessageMaxLines(int maxLines) {
+        if (mLiteView != null) {
+            mLiteView.setMaxLines(maxLines);
+        } else {
+            mMessageView.setMaxLines(maxLines);
+        }
+    }
+
+    /**
+     * Show the given helper image, or hide it if null
+     */
+    void setHelperImage(Drawable drawable) {
+        mHelperImageResId = 0;
+        applyHelperImage(drawable, false);
+    }
+
+    /**
+     * Show the given helper image resource, resolved through the drawable cache
+     *
+     * @throws android.content.res.Resources.NotFoundException if the resource does not exist
+     */
+    void setHelperImage(@DrawableRes int resId) {
+        final Drawable drawable = resolveIcon(resId);
+        applyHelperImage(drawable, true);
+        mHelperImageResId = drawable != null ? resId : 0;
+    }
+
+    private void applyHelperImage(Drawable drawable, boolean tinted) {
+        if (mLiteView != null) {
+            mLiteView.setHelperImage(drawable, tinted);
+        } else if (drawable == null) {
+            if (mHelperImageView != null) {
+                mHelperImageView.setVisibility(GONE);
+            }
+        } else {
+            final ImageView view = obtainHelperImageView();
+            applyIconTint(view, tinted);
+            view.setVisibility(VISIBLE);
+            view.setImageDrawable(drawable);
+        }
+    }
+
+    /**
+     * Show the given action text, or hide it if null. Hides the action image.
+     */
+    void setAction(CharSequence text, OnClickListener listener) {
+        if (text != null) {
+            mActionImageResId = 0;
+            mActionImageListener = null;
+        }
+        if (mLiteView != null) {
+            mLiteView.setAction(text, listener);
+        } else if (text == null) {
+            if (mActionTextView != null) {
+                mActionTextView.setVisibility(GONE);
+                mActionTextView.setOnClickListener(null);
+            }
+        } else {
+            if (mActionImageView != null) {
+                mActionImageView.setVisibility(GONE);
+            }
+            final Button view = obtainActionTextView();
+            view.setVisibility(VISIBLE);
+            view.setText(text);
+            view.setOnClickListener(listener);
+        }
+    }
+
+    void setActionTextColor(ColorStateList colors) {
+        if (mLiteView != null) {
+            mLiteView.setActionTextColor(colors);
+        } else {
+            obtainActionTextView().setTextColor(colors);
+        }
+    }
+
+    void setActionTextSize(int unit, float size) {
+        if (mLiteView != null) {
+            mLiteView.setActionTextSize(unit, size);
+        } else {
+            obtainActionTextView().setTextSize(unit, size);
+        }
+    }
+
+    void setActionTypeface(Typeface typeface) {
+        if (mLiteView != null) {
+            mLiteView.setActionTypeface(typeface, 0);
+        } else {
+            obtainActionTextView().setTypeface(typeface);
+        }
+    }
+
+    void setActionTypeface(Typeface typeface, int style) {
+        if (mLiteView != null) {
+            mLiteView.setActionTypeface(typeface, style);
+        } else {
+            obtainActionTextView().setTypeface(typeface, style);
+        }
+    }
+
+    /**
+     * Show the given action image, or hide it if null. Hides the action text.
+     */
+    void setActionImage(Drawable drawable, OnClickListener listener) {
+        mActionImageResId = 0;
+        applyActionImage(drawable, listener, false);
+    }
+
+    /**
+     * Show the given action image resource, resolved through the drawable cache. Hides the action text.
+     *
+     * @throws android.content.res.Resources.NotFoundException if the resource does not exist
+     */
+    void setActionImage(@DrawableRes int resId, OnClickListener listener) {
+        final Drawable drawable = resolveIcon(resId);
+        applyActionImage(drawable, listener, true);
+        mActionImageResId = drawable != null ? resId : 0;
+    }
+
+    private void applyActionImage(Drawable drawable, OnClickListener listener, boolean tinted) {
+        mActionImageListener = drawable != null ? listener : null;
+        if (mLiteView != null) {
+            mLiteView.setActionImage(drawable, listener, tinted);
+        } else if (drawable == null) {
+            if (mActionImageView != null) {
+                mActionImageView.setVisibility(GONE);
+                mActionImageView.setOnClickListener(null);
+            }
+        } else {
+            if (mActionTextView != null) {
+                mActionTextView.setVisibility(GONE);
+            }
+            final ImageButton view = obtainActionImageView();
+            applyIconTint(view, tinted);
+            view.setVisibility(VISIBLE);
+            view.setImageDrawable(drawable);
+            view.setOnClickListener(listener);
+        }
+    }
+
+    void setIconTintColor(int color) {
+        mIconTintColor = color;
+        mHasIconTintColor = true;
+        if (mLiteView != null) {
+            mLiteView.setIconColorFilter(color);
+        } else {
+            applyIconTint(mHelperImageView, mHelperImageResId != 0);
+            applyIconTint(mActionImageView, mActionImageResId != 0);
+        }
+        // Swap the images set from resources for ones tinted the new color
+        if (mHelperImageResId != 0) {
+            applyHelperImage(resolveIcon(mHelperImageResId), true);
+        }
+        if (mActionImageResId != 0) {
+            applyActionImage(resolveIcon(mActionImageResId), mActionImageListener, true);
+        }
+    }
+
+    private Drawable resolveIcon(@DrawableRes int resId) {
+        return GFMinimalNotificationDrawableCache.get(getContext(), resId, mIconTintColor, mHasIconTintColor);
+    }
+
+    /**
+     * Color filter an image view with the icon tint, unless its image is already tinted. Does
+     * nothing for image views not created yet, they are tinted once their image is set.
+     */
+    private void applyIconTint(ImageView view, boolean tinted) {
+        if (view == null) {
+            return;
+        }
+        if (mHasIconTintColor && !tinted) {
+            view.setColorFilter(mIconTintColor);
+        } else {
+            view.clearColorFilter();
+        }
+    }
+
     void updateWithCustomView(@LayoutRes int customViewResId) {
+        clearChildren();
         mHasCustomView = true;
-        removeAllViews();
+        mCustomViewResId = customViewResId;
+        mCustomViewBound = false;
         LayoutInflater inflater = LayoutInflater.from(getContext());
         inflater.inflate(customViewResId, this);
     }
 
+    /**
+     * Use a custom view filled in by a binder every time it is shown, which may be recycled. Only
+     * inflated if the layout does not already hold one from the same layout resource.
+     */
+    void updateWithBoundCustomView(@LayoutRes int customViewResId) {
+        if (mCustomViewBound && mCustomViewResId == customViewResId) {
+            // Recycled with this very layout, it is bound again rather than inflated
+            return;
+        }
+        updateWithCustomView(customViewResId);
+        mCustomViewBound = true;
+    }
+
     void updateWithCustomView(View customView) {
+        clearChildren();
         mHasCustomView = true;
-        removeAllViews();
+        mCustomViewResId = 0;
+        mCustomViewBound = false;
         addView(customView);
     }
 
+    private void clearChildren() {
+        removeAllViews();
+        mHelperImageView = null;
+        mMessageView = null;
+        mActionTextView = null;
+        mActionImageView = null;
+        mHelperImageStub = null;
+        mActionTextStub = null;
+        mActionImageStub = null;
+        mLiteView = null;
+    }
+
     boolean hasCustomView() {
         return mHasCustomView;
     }
 
+    /**
+     * Return whether the custom view is filled in by a binder every time it is shown, custom views
+     * that are not may not be handed to another notification
+     */
+    boolean hasBoundCustomView() {
+        return mCustomViewBound;
+    }
+
+    /**
+     * Return the layout resource the custom view was inflated from, or 0 if there is no custom view
+     * or it was given as a view
+     */
+    @LayoutRes
+    int getCustomViewResId() {
+        return mCustomViewResId;
+    }
+
+    /**
+     * Return the custom view, the root of the custom view layout, or null if there is none
+     */
+    View getCustomView() {
+        return mHasCustomView && getChildCount() > 0 ? getChildAt(0) : null;
+    }
+
+    /**
+     * Return this layout to the state it was inflated in so that it may be reused by another
+     * notification. Must only be called once the layout has been removed from its parent.
+     */
+    void reset() {
+        resetTransientState();
+        mOnLayoutChangeListener = null;
+        mOnAttachStateChangeListener = null;
+        mOnWindowStateChangeListener = null;
+
+        final ViewGroup.LayoutParams lp = getLayoutParams();
+        if (lp instanceof CoordinatorLayout.LayoutParams) {
+            ((CoordinatorLayout.LayoutParams) lp).setBehavior(null);
+            ((CoordinatorLayout.LayoutParams) lp).gravity = Gravity.BOTTOM;
+        } else if (lp instanceof FrameLayout.LayoutParams) {
+            ((FrameLayout.LayoutParams) lp).gravity = Gravity.BOTTOM;
+        } else if (lp instanceof LinearLayout.LayoutParams) {
+            ((LinearLayout.LayoutParams) lp).gravity = Gravity.BOTTOM;
+        } else if (lp instanceof RelativeLayout.LayoutParams) {
+            ((RelativeLayout.LayoutParams) lp).addRule(RelativeLayout.ALIGN_PARENT_TOP, 0);
+            ((RelativeLayout.LayoutParams) lp).addRule(RelativeLayout.ALIGN_PARENT_BOTTOM, 0);
+        }
+
+        resetContent();
+    }
+
+    /**
+     * Undo what showing, hiding or swiping the layout left behind so that it may be shown again.
+     */
+    void resetTransientState() {
+        ViewCompat.animate(this).setListener(null).cancel();
+        ViewCompat.setAlpha(this, 1f);
+        ViewCompat.setTranslationX(this, 0f);
+        ViewCompat.setTranslationY(this, 0f);
+        setVisibility(VISIBLE);
+        mStackOffset = 0f;
+        mTransitioning = false;
+
+        if (hasSingleChild()) {
+            if (getChildCount() > 0) {
+                resetChild(getChildAt(0));
+            }
+            return;
+        }
+
+        resetChild(mMessageView);
+        resetChild(mHelperImageView);
+        resetChild(mActionTextView);
+        resetChild(mActionImageView);
+    }
+
+    /**
+     * Clear the text, actions and images set, restoring the styling the layout was inflated with.
+     * Does nothing for custom views.
+     */
+    void resetContent() {
+        if (mHasCustomView) {
+            return;
+        }
+        mActionImageListener = null;
+        mHelperImageResId = 0;
+        mActionImageResId = 0;
+        mIconTintColor = 0;
+        mHasIconTintColor = false;
+        if (mLiteView != null) {
+            mLiteView.reset();
+            return;
+        }
+
+        mMessageView.setText(null);
+        mMessageView.setTextColor(mDefaultMessageTextColors);
+        mMessageView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mDefaultMessageTextSize);
+        mMessageView.setTypeface(mDefaultMessageTypeface);
+        mMessageView.setMaxLines(mDefaultMessageMaxLines);
+
+        if (mHelperImageView != null) {
+            mHelperImageView.setImageDrawable(null);
+            mHelperImageView.clearColorFilter();
+            mHelperImageView.setVisibility(GONE);
+        }
+
+        if (mActionTextView != null) {
+            mActionTextView.setText(null);
+            mActionTextView.setOnClickListener(null);
+            mActionTextView.setTextColor(mDefaultActionTextColors);
+            mActionTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mDefaultActionTextSize);
+            mActionTextView.setTypeface(mDefaultActionTypeface);
+            mActionTextView.setVisibility(GONE);
+        }
+
+        if (mActionImageView != null) {
+            mActionImageView.setImageDrawable(null);
+            mActionImageView.setOnClickListener(null);
+            mActionImageView.clearColorFilter();
+            mActionImageView.setVisibility(GONE);
+        }
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (!mHasCustomView && mLiteView == null && mMessageView == null && getChildCount() == 0) {
+            inflateDefaultChildren();
+        }
+
+        // Clamp up front rather than measuring at the full width only to measure again at the max
+        if (mMaxWidth > 0) {
+            final int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+            if (widthMode == MeasureSpec.UNSPECIFIED) {
+                widthMeasureSpec = MeasureSpec.makeMeasureSpec(mMaxWidth, MeasureSpec.AT_MOST);
+            } else if (MeasureSpec.getSize(widthMeasureSpec) > mMaxWidth) {
+                widthMeasureSpec = MeasureSpec.makeMeasureSpec(mMaxWidth, widthMode);
+            }
+        }
+
+        // Settle the orientation and padding for the number of lines the message is expected to
+        // take, so that the pass below is usually the only one
+        final boolean defaultChildren = !mHasCustomView && mLiteView == null && mMessageView != null;
+        if (mHasCustomView) {
+            updateViewsWithinLayout(VERTICAL, mMultiLineVPadding,
+                    mMultiLineVPadding - mSingleLineVPadding);
+        } else if (defaultChildren) {
+            updateViewsForMessage(estimateMultiLine(MeasureSpec.getSize(widthMeasureSpec)));
+        }
+
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 
         if (mMaxWidth > 0 && getMeasuredWidth() > mMaxWidth) {
@@ -115,40 +648,20 @@ public class GFMinimalNotificationLayout extends LinearLayout {
             super.onMeasure(widthMeasureSpec, heightMeasureSpec);
         }
 
-        boolean remeasure = false;
-        float density = getResources().getDisplayMetrics().density;
-        final int multiLineVPadding = (int) (24f * density);
-        final int singleLineVPadding = (int) (14f * density);
-        if (mHasCustomView) {
-            if (updateViewsWithinLayout(VERTICAL, multiLineVPadding,
-                    multiLineVPadding - singleLineVPadding)) {
-                remeasure = true;
-            }
-        } else {
-            final boolean isMultiLine = mMessageView.getLayout().getLineCount() > 1;
-            if (isMultiLine && mMaxInlineActionWidth > 0
-                    && mHelperImageView.getMeasuredWidth() > mMaxInlineActionWidth
-                    && (mActionTextView.getMeasuredWidth() > mMaxInlineActionWidth
-                    || mActionImageView.getMeasuredWidth() > mMaxInlineActionWidth)) {
-                if (updateViewsWithinLayout(VERTICAL, multiLineVPadding,
-                        multiLineVPadding - singleLineVPadding)) {
-                    remeasure = true;
-                }
-            } else {
-                final int messagePadding = isMultiLine ? multiLineVPadding : singleLineVPadding;
-                if (updateViewsWithinLayout(HORIZONTAL, messagePadding, messagePadding)) {
-                    remeasure = true;
-                }
-            }
-        }
-
-        if (remeasure) {
+        if (defaultChildren && updateViewsForMessage(mMessageView.getLayout().getLineCount() > 1)) {
+            // The estimate was off, measure again for the actual line count
             super.onMeasure(widthMeasureSpec, heightMeasureSpec);
         }
     }
 
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        updateMessagePaddings();
+    }
+
     void animateChildrenIn(int delay, int duration) {
-        if (mHasCustomView) {
+        if (hasSingleChild()) {
             try {
                 ViewCompat.setAlpha(getChildAt(0), 0f);
                 ViewCompat.animate(getChildAt(0)).alpha(1f).setDuration(duration)
@@ -161,28 +674,14 @@ public class GFMinimalNotificationLayout extends LinearLayout {
             ViewCompat.animate(mMessageView).alpha(1f).setDuration(duration)
                     .setStartDelay(delay).start();
 
-            if (mHelperImageView.getVisibility() == VISIBLE) {
-                ViewCompat.setAlpha(mHelperImageView, 0f);
-                ViewCompat.animate(mHelperImageView).alpha(1f).setDuration(duration)
-                        .setStartDelay(delay).start();
-            }
-
-            if (mActionTextView.getVisibility() == VISIBLE) {
-                ViewCompat.setAlpha(mActionTextView, 0f);
-                ViewCompat.animate(mActionTextView).alpha(1f).setDuration(duration)
-                        .setStartDelay(delay).start();
-            }
-
-            if (mActionImageView.getVisibility() == VISIBLE) {
-                ViewCompat.setAlpha(mActionImageView, 0f);
-                ViewCompat.animate(mActionImageView).alpha(1f).setDuration(duration)
-                        .setStartDelay(delay).start();
-            }
+            fadeIfShown(mHelperImageView, 0f, 1f, delay, duration);
+            fadeIfShown(mActionTextView, 0f, 1f, delay, duration);
+            fadeIfShown(mActionImageView, 0f, 1f, delay, duration);
         }
     }
 
     void animateChildrenOut(int delay, int duration) {
-        if (mHasCustomView) {
+        if (hasSingleChild()) {
             try {
                 ViewCompat.setAlpha(getChildAt(0), 1f);
                 ViewCompat.animate(getChildAt(0)).alpha(0f).setDuration(duration)
@@ -195,23 +694,20 @@ public class GFMinimalNotificationLayout extends LinearLayout {
             ViewCompat.animate(mMessageView).alpha(0f).setDuration(duration)
                     .setStartDelay(delay).start();
 
-            if (mHelperImageView.getVisibility() == VISIBLE) {
-                ViewCompat.setAlpha(mHelperImageView, 1f);
-                ViewCompat.animate(mHelperImageView).alpha(0f).setDuration(duration)
-                        .setStartDelay(delay).start();
-            }
-
-            if (mActionTextView.getVisibility() == VISIBLE) {
-                ViewCompat.setAlpha(mActionTextView, 1f);
-                ViewCompat.animate(mActionTextView).alpha(0f).setDuration(duration)
-                        .setStartDelay(delay).start();
-            }
+            fadeIfShown(mHelperImageView, 1f, 0f, delay, duration);
+            fadeIfShown(mActionTextView, 1f, 0f, delay, duration);
+            fadeIfShown(mActionImageView, 1f, 0f, delay, duration);
+        }
+    }
 
-            if (mActionImageView.getVisibility() == VISIBLE) {
-                ViewCompat.setAlpha(mActionImageView, 1f);
-                ViewCompat.animate(mActionImageView).alpha(0f).setDuration(duration)
-                        .setStartDelay(delay).start();
-            }
+    /**
+     * Fade the given child, unless it was never created or is hidden
+     */
+    private static void fadeIfShown(View child, float from, float to, int delay, int duration) {
+        if (child != null && child.getVisibility() == VISIBLE) {
+            ViewCompat.setAlpha(child, from);
+            ViewCompat.animate(child).alpha(to).setDuration(duration)
+                    .setStartDelay(delay).start();
         }
     }
 
@@ -239,6 +735,22 @@ public class GFMinimalNotificationLayout extends LinearLayout {
         }
     }
 
+    @Override
+    public void onWindowFocusChanged(boolean hasWindowFocus) {
+        super.onWindowFocusChanged(hasWindowFocus);
+        if (mOnWindowStateChangeListener != null) {
+            mOnWindowStateChangeListener.onWindowFocusChanged(hasWindowFocus);
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (mOnWindowStateChangeListener != null) {
+            mOnWindowStateChangeListener.onWindowVisibilityChanged(visibility);
+        }
+    }
+
     void setOnLayoutChangeListener(OnLayoutChangeListener onLayoutChangeListener) {
         mOnLayoutChangeListener = onLayoutChangeListener;
     }
@@ -247,6 +759,102 @@ public class GFMinimalNotificationLayout extends LinearLayout {
         mOnAttachStateChangeListener = listener;
     }
 
+    void setOnWindowStateChangeListener(OnWindowStateChangeListener listener) {
+        mOnWindowStateChangeListener = listener;
+    }
+
+    float getStackOffset() {
+        return mStackOffset;
+    }
+
+    void setStackOffset(float stackOffset) {
+        mStackOffset = stackOffset;
+    }
+
+    @GFMinimalNotification.Direction
+    int getStackDirection() {
+        return mStackDirection;
+    }
+
+    void setStackDirection(@GFMinimalNotification.Direction int stackDirection) {
+        mStackDirection = stackDirection;
+    }
+
+    boolean isTransitioning() {
+        return mTransitioning;
+    }
+
+    void setTransitioning(boolean transitioning) {
+        mTransitioning = transitioning;
+    }
+
+    /**
+     * Return the swipe behavior previously set for the given parent, or null if there is none
+     */
+    CoordinatorLayout.Behavior getSwipeBehavior(ViewGroup parent) {
+        if (mSwipeBehaviorParent == null || mSwipeBehaviorParent.get() != parent) {
+            return null;
+        }
+        return mSwipeBehavior;
+    }
+
+    void setSwipeBehavior(CoordinatorLayout.Behavior behavior, ViewGroup parent) {
+        mSwipeBehavior = behavior;
+        mSwipeBehaviorParent = new WeakReference<>(parent);
+    }
+
+    /**
+     * Whether the layout holds a single child, a custom view or the lite view, in place of the
+     * default children
+     */
+    private boolean hasSingleChild() {
+        return mHasCustomView || mLiteView != null;
+    }
+
+    private void updateMessagePaddings() {
+        final float density = getResources().getDisplayMetrics().density;
+        mMultiLineVPadding = (int) (24f * density);
+        mSingleLineVPadding = (int) (14f * density);
+    }
+
+    /**
+     * Estimate whether the message will take more than one line once measured within the given
+     * width, from the width of its text and the widths its siblings were last measured at.
+     */
+    private boolean estimateMultiLine(int width) {
+        final CharSequence text = mMessageView.getText();
+        if (TextUtils.isEmpty(text)) {
+            return false;
+        }
+        if (TextUtils.indexOf(text, '\n') >= 0) {
+            return true;
+        }
+        if (width <= 0) {
+            // unbounded, the message is free to take a single line
+            return false;
+        }
+
+        final int available = width - getPaddingLeft() - getPaddingRight()
+                - mMessageView.getCompoundPaddingLeft() - mMessageView.getCompoundPaddingRight()
+                - getMeasuredWidthWithMargins(mHelperImageView)
+                - getMeasuredWidthWithMargins(mActionTextView)
+                - getMeasuredWidthWithMargins(mActionImageView);
+        return mMessageView.getPaint().measureText(text, 0, text.length()) > available;
+    }
+
+    private boolean updateViewsForMessage(boolean isMultiLine) {
+        if (isMultiLine && mMaxInlineActionWidth > 0
+                && measuredWidthOf(mHelperImageView) > mMaxInlineActionWidth
+                && (measuredWidthOf(mActionTextView) > mMaxInlineActionWidth
+                || measuredWidthOf(mActionImageView) > mMaxInlineActionWidth)) {
+            return updateViewsWithinLayout(VERTICAL, mMultiLineVPadding,
+                    mMultiLineVPadding - mSingleLineVPadding);
+        }
+
+        final int messagePadding = isMultiLine ? mMultiLineVPadding : mSingleLineVPadding;
+        return updateViewsWithinLayout(HORIZONTAL, messagePadding, messagePadding);
+    }
+
     private boolean updateViewsWithinLayout(final int orientation,
                                             final int messagePadTop, final int messagePadBottom) {
         boolean changed = false;
@@ -274,6 +882,26 @@ public class GFMinimalNotificationLayout extends LinearLayout {
         return changed;
     }
 
+    private static int getMeasuredWidthWithMargins(View child) {
+        if (child == null || child.getVisibility() == GONE) {
+            return 0;
+        }
+        final MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
+        return child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin;
+    }
+
+    private static int measuredWidthOf(View child) {
+        return child != null ? child.getMeasuredWidth() : 0;
+    }
+
+    private static void resetChild(View child) {
+        if (child == null) {
+            return;
+        }
+        ViewCompat.animate(child).cancel();
+        ViewCompat.setAlpha(child, 1f);
+    }
+
     private static void updateTopBottomPadding(View view, int topPadding, int bottomPadding) {
         if (ViewCompat.isPaddingRelative(view)) {
             ViewCompat.setPaddingRelative(view,
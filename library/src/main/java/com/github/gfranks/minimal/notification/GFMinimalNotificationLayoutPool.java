@@ -0,0 +1,165 @@
+package com.github.gfranks.minimal.notification;
+
+import android.app.Activity;
+import android.content.Context;
+import android.support.annotation.LayoutRes;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Bounded, per-Context pool of {@link GFMinimalNotificationLayout} instances. Layouts are handed
+ * back here once their notification has been dismissed, and are reused by later notifications
+ * shown within the same Context so that the show path does not need to inflate a new view tree.
+ *
+ * <p>Layouts holding a custom view inflated from a layout resource are pooled too, and only handed
+ * out again for that same resource, to be bound by a
+ * {@link GFMinimalNotification.CustomViewBinder}. Custom views given as views are never pooled.
+ */
+final class GFMinimalNotificationLayoutPool {
+
+    static final int DEFAULT_MAX_POOL_SIZE = 3;
+
+    private static final Map<Context, GFMinimalNotificationLayoutPool> sPools = new WeakHashMap<>();
+    private static volatile int sMaxPoolSize = DEFAULT_MAX_POOL_SIZE;
+
+    /**
+     * Return the pool for the given context, creating it if needed.
+     */
+    static GFMinimalNotificationLayoutPool get(Context context) {
+        synchronized (sPools) {
+            GFMinimalNotificationLayoutPool pool = sPools.get(context);
+            if (pool == null) {
+                pool = new GFMinimalNotificationLayoutPool(context);
+                sPools.put(context, pool);
+                // pooled views hold on to their Context, make sure we drop them with the Activity
+                GFMinimalNotificationLifecycle.watch(context);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Update the maximum number of layouts retained per Context. Pools currently holding more than
+     * the new maximum are trimmed.
+     */
+    static void setMaxPoolSize(int maxPoolSize) {
+        synchronized (sPools) {
+            sMaxPoolSize = Math.max(0, maxPoolSize);
+            for (GFMinimalNotificationLayoutPool pool : sPools.values()) {
+                pool.trim(sMaxPoolSize);
+            }
+        }
+    }
+
+    static int getMaxPoolSize() {
+        return sMaxPoolSize;
+    }
+
+    /**
+     * Drop every pool belonging to the given Activity
+     */
+    static void clear(Activity activity) {
+        synchronized (sPools) {
+            Iterator<Map.Entry<Context, GFMinimalNotificationLayoutPool>> it = sPools.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Context, GFMinimalNotificationLayoutPool> entry = it.next();
+                if (GFMinimalNotificationLifecycle.findActivity(entry.getKey()) == activity) {
+                    entry.getValue().trim(0);
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private final LayoutInflater mInflater;
+    private final ArrayList<GFMinimalNotificationLayout> mLayouts;
+    // The class of the parent each pooled layout was inflated against, their LayoutParams depend on it
+    private final ArrayList<Class<? extends ViewGroup>> mParentClasses;
+
+    private GFMinimalNotificationLayoutPool(Context context) {
+        mInflater = LayoutInflater.from(context);
+        mLayouts = new ArrayList<>(DEFAULT_MAX_POOL_SIZE);
+        mParentClasses = new ArrayList<>(DEFAULT_MAX_POOL_SIZE);
+    }
+
+    /**
+     * Return a recycled layout suitable for the given parent, or inflate a new one if none is
+     * available.
+     *
+     * @param customViewResId The layout of the custom view the layout should hold, filled in by a
+     *                        binder every time it is shown, or 0 for none
+     * @param lite            Whether the layout should use the lite renderer, ignored for custom views
+     */
+    GFMinimalNotificationLayout acquire(ViewGroup parent, @LayoutRes int customViewResId, boolean lite) {
+        if (customViewResId != 0) {
+            lite = false;
+        }
+        synchronized (this) {
+            final Class<? extends ViewGroup> parentClass = parent.getClass();
+            for (int i = mLayouts.size() - 1; i >= 0; i--) {
+                final GFMinimalNotificationLayout layout = mLayouts.get(i);
+                if (mParentClasses.get(i) == parentClass && layout.getCustomViewResId() == customViewResId
+                        && layout.isLite() == lite) {
+                    mParentClasses.remove(i);
+                    return mLayouts.remove(i);
+                }
+            }
+        }
+
+        final GFMinimalNotificationLayout layout = inflate(parent);
+        if (customViewResId != 0) {
+            layout.updateWithBoundCustomView(customViewResId);
+        } else if (lite) {
+            layout.useLiteRenderer();
+        } else {
+            layout.inflateDefaultChildren();
+        }
+        return layout;
+    }
+
+    /**
+     * Inflate a new layout without any children, for a custom view given as a view. Such layouts
+     * are never pooled.
+     */
+    GFMinimalNotificationLayout inflate(ViewGroup parent) {
+        return (GFMinimalNotificationLayout) mInflater.inflate(
+                R.layout.layout_minimal_notification, parent, false);
+    }
+
+    /**
+     * Reset the given layout and retain it for reuse.
+     *
+     * @param layout The layout to recycle, it must no longer be attached to a parent
+     * @param parent The parent the layout was inflated against
+     * @return true if the layout was retained, false if it was discarded
+     */
+    boolean release(GFMinimalNotificationLayout layout, ViewGroup parent) {
+        if ((layout.hasCustomView() && !layout.hasBoundCustomView()) || layout.getParent() != null) {
+            // custom views given as views belong to the caller, and those nobody binds would show
+            // another notification's content, neither can be handed out to another notification
+            return false;
+        }
+
+        synchronized (this) {
+            if (mLayouts.size() >= getMaxPoolSize() || mLayouts.contains(layout)) {
+                return false;
+            }
+            layout.reset();
+            mLayouts.add(layout);
+            mParentClasses.add(parent.getClass());
+            return true;
+        }
+    }
+
+    private synchronized void trim(int maxSize) {
+        while (mLayouts.size() > maxSize) {
+            mLayouts.remove(mLayouts.size() - 1);
+            mParentClasses.remove(mParentClasses.size() - 1);
+        }
+    }
+}
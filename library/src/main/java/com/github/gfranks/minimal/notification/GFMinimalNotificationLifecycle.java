@@ -0,0 +1,111 @@
+package com.github.gfranks.minimal.notification;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Bundle;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Tracks the lifecycle of the Activities hosting notifications. Their notifications are held back
+ * while an Activity is stopped, and any per-Activity state held by the library is released once
+ * its Activity is destroyed.
+ */
+final class GFMinimalNotificationLifecycle implements Application.ActivityLifecycleCallbacks {
+
+    private static GFMinimalNotificationLifecycle sLifecycle;
+    // Only accessed on the main thread
+    private static final Set<Activity> sStopped =
+            Collections.newSetFromMap(new WeakHashMap<Activity, Boolean>());
+
+    private GFMinimalNotificationLifecycle() {
+    }
+
+    /**
+     * Start watching the Activity backing the given context, if any. Safe to call repeatedly.
+     */
+    static void watch(Context context) {
+        final Activity activity = findActivity(context);
+        if (activity == null) {
+            return;
+        }
+
+        synchronized (GFMinimalNotificationLifecycle.class) {
+            if (sLifecycle == null) {
+                sLifecycle = new GFMinimalNotificationLifecycle();
+                activity.getApplication().registerActivityLifecycleCallbacks(sLifecycle);
+            }
+        }
+    }
+
+    /**
+     * Unwrap the given context until the Activity backing it is found.
+     *
+     * @return the Activity, or null if the context is not backed by one
+     */
+    static Activity findActivity(Context context) {
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) {
+                return (Activity) context;
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+
+    /**
+     * Whether the given Activity has been stopped, and not started since. Must be called on the main
+     * thread.
+     */
+    static boolean isStopped(Activity activity) {
+        return activity != null && !sStopped.isEmpty() && sStopped.contains(activity);
+    }
+
+    /**
+     * Whether any watched Activity is stopped. Must be called on the main thread.
+     */
+    static boolean hasStoppedActivities() {
+        return !sStopped.isEmpty();
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        if (sStopped.remove(activity)) {
+            GFMinimalNotificationManager.notifyHostStarted(activity);
+        }
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        sStopped.add(activity);
+        GFMinimalNotificationManager.notifyHostStopped(activity);
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+        sStopped.remove(activity);
+        GFMinimalNotificationManager.notifyHostDestroyed(activity);
+        GFMinimalNotificationLayoutPool.clear(activity);
+        GFMinimalNotificationParentCache.unregisterHost(activity);
+    }
+}
@@ -0,0 +1,555 @@
+package com.github.gfranks.minimal.notification;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.support.annotation.StyleRes;
+import android.support.v4.view.ViewCompat;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.text.style.TextAppearanceSpan;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
+import android.view.View;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.Locale;
+
+/**
+ * Draws the content of a notification, its helper image, message and action, from a single view
+ * rather than a view per part. The message is laid out once per text and width, and touches on the
+ * action are hit tested by hand.
+ *
+ * <p>Used in place of the default children of a {@link GFMinimalNotificationLayout} when the lite
+ * renderer is selected. The action is always laid out inline, at the end of the message.
+ */
+final class GFMinimalNotificationLiteView extends View {
+
+    private static final int DEFAULT_MAX_LINES = 2;
+
+    // Dimensions matching the default children, in dp
+    private static final float MESSAGE_H_PADDING = 12f;
+    private static final float MESSAGE_SINGLE_LINE_V_PADDING = 14f;
+    private static final float MESSAGE_MULTI_LINE_V_PADDING = 24f;
+    private static final float HELPER_IMAGE_MAX_SIZE = 45f;
+    private static final float HELPER_IMAGE_H_MARGIN = 6f;
+    private static final float HELPER_IMAGE_V_MARGIN = 10f;
+    private static final float ACTION_H_PADDING = 12f;
+    private static final float ACTION_IMAGE_SIZE = 45f;
+    private static final float ACTION_IMAGE_MARGIN = 3f;
+    private static final float DEFAULT_TEXT_SIZE = 14f;
+
+    private final float mDensity;
+    private final TextPaint mMessagePaint;
+    private final TextPaint mActionPaint;
+    private final ColorStateList mDefaultMessageTextColors;
+    private final ColorStateList mDefaultActionTextColors;
+    private final float mDefaultTextSize;
+
+    private CharSequence mText;
+    private ColorStateList mMessageTextColors;
+    private int mMaxLines = DEFAULT_MAX_LINES;
+    // The message laid out for mLayoutWidth, null until measured or once anything it depends on changes
+    private StaticLayout mLayout;
+    private int mLayoutWidth;
+    // Bumped whenever the message has to be laid out again, a layout built off the main thread is
+    // only taken up if nothing changed while it was being built
+    private int mTextGeneration;
+
+    private Drawable mHelperImage;
+    // Whether the images came tinted from the drawable cache, the icon color filter is left off them
+    private boolean mHelperImageTinted;
+    private boolean mActionImageTinted;
+
+    private String mActionLabel;
+    private ColorStateList mActionTextColors;
+    private Drawable mActionImage;
+    private OnClickListener mActionListener;
+    private boolean mActionPressed;
+
+    private ColorFilter mIconColorFilter;
+
+    // Bounds of each part, from the start edge, set on layout
+    private int mHelperWidth;
+    private int mMessageStart;
+    private int mActionStart;
+    private int mActionWidth;
+
+    GFMinimalNotificationLiteView(Context context) {
+        super(context);
+        mDensity = getResources().getDisplayMetrics().density;
+        mDefaultTextSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, DEFAULT_TEXT_SIZE,
+                getResources().getDisplayMetrics());
+
+        final TypedArray a = context.obtainStyledAttributes(new int[]{
+                android.R.attr.textColorPrimary, R.attr.colorAccent});
+        mDefaultMessageTextColors = a.getColorStateList(0);
+        mDefaultActionTextColors = a.getColorStateList(1);
+        a.recycle();
+
+        mMessagePaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        mMessagePaint.density = mDensity;
+        mActionPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        mActionPaint.density = mDensity;
+        reset();
+
+        ViewCompat.setImportantForAccessibility(this, ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_YES);
+    }
+
+    /**
+     * Clear the text, action and images set, restoring the default styling
+     */
+    void reset() {
+        mText = null;
+        mMessageTextColors = mDefaultMessageTextColors;
+        mMessagePaint.setTextSize(mDefaultTextSize);
+        mMessagePaint.setTypeface(Typeface.DEFAULT);
+        mMessagePaint.setFakeBoldText(false);
+        mMessagePaint.setTextSkewX(0f);
+        mMaxLines = DEFAULT_MAX_LINES;
+
+        mHelperImage = null;
+        mHelperImageTinted = false;
+        mActionLabel = null;
+        mActionTextColors = mDefaultActionTextColors;
+        mActionPaint.setTextSize(mDefaultTextSize);
+        mActionPaint.setTypeface(Typeface.DEFAULT_BOLD);
+        mActionPaint.setFakeBoldText(false);
+        mActionPaint.setTextSkewX(0f);
+        mActionImage = null;
+        mActionImageTinted = false;
+        mActionListener = null;
+        mActionPressed = false;
+        mIconColorFilter = null;
+        setContentDescription(null);
+        invalidateText();
+    }
+
+    CharSequence getText() {
+        return mText;
+    }
+
+    void setText(CharSequence text) {
+        mText = text;
+        setContentDescription(text);
+        invalidateText();
+    }
+
+    void setTextColor(ColorStateList colors) {
+        mMessageTextColors = colors != null ? colors : mDefaultMessageTextColors;
+        invalidate();
+    }
+
+    void setTextSize(int unit, float size) {
+        mMessagePaint.setTextSize(TypedValue.applyDimension(unit, size, getResources().getDisplayMetrics()));
+        invalidateText();
+    }
+
+    void setTypeface(Typeface typeface, int style) {
+        setTypeface(mMessagePaint, typeface, style);
+        invalidateText();
+    }
+
+    void setTextAppearance(@StyleRes int resId) {
+        final TextAppearanceSpan appearance = new TextAppearanceSpan(getContext(), resId);
+        if (appearance.getTextColor() != null) {
+            mMessageTextColors = appearance.getTextColor();
+        }
+        if (appearance.getTextSize() > 0) {
+            mMessagePaint.setTextSize(appearance.getTextSize());
+        }
+        setTypeface(mMessagePaint, appearance.getFamily() != null
+                ? Typeface.create(appearance.getFamily(), Typeface.NORMAL) : null, appearance.getTextStyle());
+        invalidateText();
+    }
+
+    void setMaxLines(int maxLines) {
+        mMaxLines = maxLines;
+        invalidateText();
+    }
+
+    int getMaxLines() {
+        return mMaxLines;
+    }
+
+    /**
+     * Return a copy of the paint the message is drawn with, safe to use off the main thread
+     */
+    TextPaint copyMessagePaint() {
+        return new TextPaint(mMessagePaint);
+    }
+
+    /**
+     * Return the width the message was last laid out within, or 0 if it has never been measured
+     */
+    int getLastLayoutWidth() {
+        return mLayoutWidth;
+    }
+
+    boolean hasLayout() {
+        return mLayout != null;
+    }
+
+    int getTextGeneration() {
+        return mTextGeneration;
+    }
+
+    /**
+     * Take up a message layout built off the main thread, unless the message or its styling changed
+     * while it was being built
+     *
+     * @param generation The {@link #getTextGeneration() generation} the layout was built for
+     */
+    void setPrecomputedLayout(StaticLayout layout, int width, int generation) {
+        if (generation == mTextGeneration && mLayout == null) {
+            mLayout = layout;
+            mLayoutWidth = width;
+        }
+    }
+
+    /**
+     * @param tinted Whether the image is already tinted, see {@link GFMinimalNotificationDrawableCache}
+     */
+    void setHelperImage(Drawable drawable, boolean tinted) {
+        mHelperImageTinted = tinted;
+        mHelperImage = prepareIcon(drawable, tinted);
+        invalidateText();
+    }
+
+    /**
+     * Set the action's label, or null to remove it. Removes the action image, if any.
+     */
+    void setAction(CharSequence text, OnClickListener listener) {
+        if (text == null) {
+            if (mActionLabel != null) {
+                mActionLabel = null;
+                mActionListener = null;
+            }
+        } else {
+            mActionLabel = text.toString().toUpperCase(Locale.getDefault());
+            mActionImage = null;
+            mActionListener = listener;
+        }
+        invalidateText();
+    }
+
+    void setActionTextColor(ColorStateList colors) {
+        mActionTextColors = colors != null ? colors : mDefaultActionTextColors;
+        invalidate();
+    }
+
+    void setActionTextSize(int unit, float size) {
+        mActionPaint.setTextSize(TypedValue.applyDimension(unit, size, getResources().getDisplayMetrics()));
+        invalidateText();
+    }
+
+    void setActionTypeface(Typeface typeface, int style) {
+        setTypeface(mActionPaint, typeface, style);
+        invalidateText();
+    }
+
+    /**
+     * Set the action's image, or null to remove it. Removes the action label, if any.
+     *
+     * @param tinted Whether the image is already tinted, see {@link GFMinimalNotificationDrawableCache}
+     */
+    void setActionImage(Drawable drawable, OnClickListener listener, boolean tinted) {
+        if (drawable == null) {
+            if (mActionImage != null) {
+                mActionImage = null;
+                mActionListener = null;
+            }
+        } else {
+            mActionImageTinted = tinted;
+            mActionImage = prepareIcon(drawable, tinted);
+            mActionLabel = null;
+            mActionListener = listener;
+        }
+        invalidateText();
+    }
+
+    void setIconColorFilter(int color) {
+        mIconColorFilter = new PorterDuffColorFilter(color, PorterDuff.Mode.SRC_ATOP);
+        if (mHelperImage != null) {
+            mHelperImage = prepareIcon(mHelperImage, mHelperImageTinted);
+        }
+        if (mActionImage != null) {
+            mActionImage = prepareIcon(mActionImage, mActionImageTinted);
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int helperWidth = getHelperImageWidth();
+        final int actionWidth = getActionWidth();
+        final int messagePadding = dp(MESSAGE_H_PADDING) * 2;
+
+        final int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        if (widthMode != MeasureSpec.EXACTLY) {
+            final int desired = helperWidth + actionWidth + messagePadding + (mText != null
+                    ? (int) Math.ceil(Layout.getDesiredWidth(mText, mMessagePaint)) : 0);
+            width = widthMode == MeasureSpec.AT_MOST ? Math.min(desired, width) : desired;
+        }
+
+        final StaticLayout layout = getLayout(Math.max(0, width - helperWidth - actionWidth - messagePadding));
+        final int vPadding = dp(layout.getLineCount() > 1
+                ? MESSAGE_MULTI_LINE_V_PADDING : MESSAGE_SINGLE_LINE_V_PADDING) * 2;
+        int height = layout.getHeight() + vPadding;
+        if (mHelperImage != null) {
+            height = Math.max(height, getHelperImageHeight() + dp(HELPER_IMAGE_V_MARGIN) * 2);
+        }
+        if (mActionImage != null) {
+            height = Math.max(height, dp(ACTION_IMAGE_SIZE) + dp(ACTION_IMAGE_MARGIN) * 2);
+        }
+
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        final int width = right - left;
+        mHelperWidth = getHelperImageWidth();
+        mActionWidth = getActionWidth();
+        mMessageStart = mHelperWidth + dp(MESSAGE_H_PADDING);
+        mActionStart = width - mActionWidth;
+
+        final int height = bottom - top;
+        if (mHelperImage != null) {
+            final int w = mHelperWidth - dp(HELPER_IMAGE_H_MARGIN) * 2;
+            final int h = getHelperImageHeight();
+            setBoundsFromStart(mHelperImage, dp(HELPER_IMAGE_H_MARGIN), (height - h) / 2, w, h);
+        }
+        if (mActionImage != null) {
+            final int size = dp(ACTION_IMAGE_SIZE);
+            final int w = Math.min(size, mActionImage.getIntrinsicWidth() > 0 ? mActionImage.getIntrinsicWidth() : size);
+            final int h = Math.min(size, mActionImage.getIntrinsicHeight() > 0 ? mActionImage.getIntrinsicHeight() : size);
+            setBoundsFromStart(mActionImage, mActionStart + dp(ACTION_IMAGE_MARGIN) + (size - w) / 2,
+                    (height - h) / 2, w, h);
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final int[] state = getDrawableState();
+        if (mHelperImage != null) {
+            mHelperImage.draw(canvas);
+        }
+
+        if (mLayout != null) {
+            mMessagePaint.setColor(mMessageTextColors.getColorForState(state, mMessageTextColors.getDefaultColor()));
+            mMessagePaint.drawableState = state;
+            final int save = canvas.save();
+            canvas.translate(isRtl() ? getWidth() - mMessageStart - mLayout.getWidth() : mMessageStart,
+                    (getHeight() - mLayout.getHeight()) / 2);
+            mLayout.draw(canvas);
+            canvas.restoreToCount(save);
+        }
+
+        if (mActionLabel != null) {
+            final int[] actionState = mActionPressed ? PRESSED_STATE_SET : state;
+            mActionPaint.setColor(mActionTextColors.getColorForState(actionState,
+                    mActionTextColors.getDefaultColor()));
+            final float labelWidth = mActionPaint.measureText(mActionLabel);
+            final float x = mActionStart + dp(ACTION_H_PADDING);
+            final float baseline = (getHeight() - mActionPaint.descent() - mActionPaint.ascent()) / 2f;
+            canvas.drawText(mActionLabel, isRtl() ? getWidth() - x - labelWidth : x, baseline, mActionPaint);
+        } else if (mActionImage != null) {
+            mActionImage.draw(canvas);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mActionListener == null || !isEnabled()) {
+            return false;
+        }
+
+        final boolean inAction = isWithinAction(event.getX());
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                if (!inAction) {
+                    return false;
+                }
+                setActionPressed(true);
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                setActionPressed(inAction);
+                return true;
+            case MotionEvent.ACTION_UP:
+                if (mActionPressed && inAction) {
+                    setActionPressed(false);
+                    performClick();
+                }
+                setActionPressed(false);
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                setActionPressed(false);
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean performClick() {
+        final boolean handled = super.performClick();
+        if (mActionListener != null) {
+            playSoundEffect(SoundEffectConstants.CLICK);
+            mActionListener.onClick(this);
+            sendAccessibilityEvent(AccessibilityEvent.TYPE_VIEW_CLICKED);
+            return true;
+        }
+        return handled;
+    }
+
+    @Override
+    public void onInitializeAccessibilityNodeInfo(AccessibilityNodeInfo info) {
+        super.onInitializeAccessibilityNodeInfo(info);
+        if (mActionListener != null) {
+            // Clicking the notification as a whole performs the action
+            info.setClickable(true);
+            info.addAction(AccessibilityNodeInfo.ACTION_CLICK);
+        }
+    }
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return super.verifyDrawable(who) || who == mHelperImage || who == mActionImage;
+    }
+
+    private void setActionPressed(boolean pressed) {
+        if (mActionPressed != pressed) {
+            mActionPressed = pressed;
+            invalidate();
+        }
+    }
+
+    private boolean isWithinAction(float x) {
+        final float fromStart = isRtl() ? getWidth() - x : x;
+        return mActionWidth > 0 && fromStart >= mActionStart && fromStart <= mActionStart + mActionWidth;
+    }
+
+    /**
+     * Return the message laid out within the given width, reusing the last layout if nothing it
+     * depends on has changed
+     */
+    private StaticLayout getLayout(int width) {
+        if (mLayout == null || mLayoutWidth != width) {
+            mLayout = buildLayout(mText, mMessagePaint, width, mMaxLines);
+            mLayoutWidth = width;
+        }
+        return mLayout;
+    }
+
+    /**
+     * Lay out the message within the given width, ellipsizing it after the given number of lines.
+     * Safe to call off the main thread with a paint of its own.
+     */
+    static StaticLayout buildLayout(CharSequence text, TextPaint paint, int width, int maxLines) {
+        if (text == null) {
+            text = "";
+        }
+        final Layout.Alignment alignment = Layout.Alignment.ALIGN_NORMAL;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width)
+                    .setAlignment(alignment)
+                    .setMaxLines(maxLines)
+                    .setEllipsize(TextUtils.TruncateAt.END)
+                    .build();
+        }
+
+        final StaticLayout layout = new StaticLayout(text, paint, width, alignment, 1f, 0f, false);
+        if (maxLines <= 0 || layout.getLineCount() <= maxLines) {
+            return layout;
+        }
+        // Ellipsize whatever is left from the last line we show
+        final int start = layout.getLineStart(maxLines - 1);
+        final CharSequence rest = TextUtils.ellipsize(
+                text.subSequence(start, text.length()).toString().replace('\n', ' '),
+                paint, width, TextUtils.TruncateAt.END);
+        return new StaticLayout(TextUtils.concat(text.subSequence(0, start), rest),
+                paint, width, alignment, 1f, 0f, false);
+    }
+
+    private void invalidateText() {
+        mLayout = null;
+        mTextGeneration++;
+        requestLayout();
+        invalidate();
+    }
+
+    private int getHelperImageWidth() {
+        if (mHelperImage == null) {
+            return 0;
+        }
+        final int intrinsic = mHelperImage.getIntrinsicWidth();
+        return Math.min(dp(HELPER_IMAGE_MAX_SIZE), intrinsic > 0 ? intrinsic : dp(HELPER_IMAGE_MAX_SIZE))
+                + dp(HELPER_IMAGE_H_MARGIN) * 2;
+    }
+
+    private int getHelperImageHeight() {
+        final int intrinsic = mHelperImage.getIntrinsicHeight();
+        return Math.min(dp(HELPER_IMAGE_MAX_SIZE), intrinsic > 0 ? intrinsic : dp(HELPER_IMAGE_MAX_SIZE));
+    }
+
+    private int getActionWidth() {
+        if (mActionLabel != null) {
+            return (int) Math.ceil(mActionPaint.measureText(mActionLabel)) + dp(ACTION_H_PADDING) * 2;
+        } else if (mActionImage != null) {
+            return dp(ACTION_IMAGE_SIZE) + dp(ACTION_IMAGE_MARGIN) * 2;
+        }
+        return 0;
+    }
+
+    private Drawable prepareIcon(Drawable drawable, boolean tinted) {
+        if (drawable == null) {
+            return null;
+        }
+        if (mIconColorFilter != null && !tinted) {
+            drawable = drawable.mutate();
+            drawable.setColorFilter(mIconColorFilter);
+        }
+        drawable.setCallback(this);
+        return drawable;
+    }
+
+    private void setBoundsFromStart(Drawable drawable, int start, int top, int width, int height) {
+        final int left = isRtl() ? getWidth() - start - width : start;
+        drawable.setBounds(left, top, left + width, top + height);
+    }
+
+    private boolean isRtl() {
+        return ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL;
+    }
+
+    private int dp(float value) {
+        return (int) (value * mDensity);
+    }
+
+    private static void setTypeface(TextPaint paint, Typeface typeface, int style) {
+        // Mirrors TextView#setTypeface(Typeface, int)
+        if (style > 0) {
+            typeface = typeface == null ? Typeface.defaultFromStyle(style) : Typeface.create(typeface, style);
+            final int need = style & ~(typeface != null ? typeface.getStyle() : 0);
+            paint.setFakeBoldText((need & Typeface.BOLD) != 0);
+            paint.setTextSkewX((need & Typeface.ITALIC) != 0 ? -0.25f : 0f);
+        } else {
+            paint.setFakeBoldText(false);
+            paint.setTextSkewX(0f);
+        }
+        paint.setTypeface(typeface);
+    }
+}
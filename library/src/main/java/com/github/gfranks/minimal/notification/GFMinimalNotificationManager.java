@@ -1,218 +1,1178 @@
 package com.github.gfranks.minimal.notification;
 
+import android.app.Activity;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
+import android.support.v4.os.TraceCompat;
+import android.view.View;
+import android.view.ViewGroup;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
+/**
+ * Queues and times out notifications. Each parent notifications are shown within has a manager of
+ * its own, so notifications in separate windows, or separate parts of a window, never wait on or
+ * replace one another. The queue limits, overflow policy and rate limiter are shared by every
+ * manager.
+ *
+ * <p>The queue is only ever touched from the main thread, calls made from any other thread are
+ * posted to it. Each record's state is kept in an atomic field so that whether a notification is
+ * shown or queued can be read from any thread without blocking. Other threads only ever move a
+ * record from idle to pending, every other transition is made on the main thread.
+ */
 class GFMinimalNotificationManager {
 
     private static final int MSG_TIMEOUT = 0;
+    private static final int MSG_SHOW = 1;
+    private static final int MSG_DISMISS = 2;
+    private static final int MSG_SHOW_ALL = 3;
 
     private static final int SHORT_DURATION_MS = 1500;
     private static final int LONG_DURATION_MS = 2750;
     private static final int EXTRA_LONG_DURATION_MS = 5000;
 
-    private static GFMinimalNotificationManager sManager;
+    static final int DEFAULT_QUEUE_CAPACITY = 1;
+    static final int DEFAULT_MAX_VISIBLE = 1;
+    static final long DEFAULT_COALESCING_WINDOW_MS = 5000;
 
-    static GFMinimalNotificationManager getInstance() {
-        if (sManager == null) {
-            sManager = new GFMinimalNotificationManager();
+    // Reasons a timeout may be paused for
+    static final int PAUSE_TOUCH = 1;
+    static final int PAUSE_WINDOW_FOCUS = 1 << 1;
+    static final int PAUSE_WINDOW_HIDDEN = 1 << 2;
+    static final int PAUSE_HOST_STOPPED = 1 << 3;
+
+    private static final int PRIORITY_LEVELS =
+            GFMinimalNotification.PRIORITY_HIGH - GFMinimalNotification.PRIORITY_LOW + 1;
+
+    private static final Map<ViewGroup, GFMinimalNotificationManager> sManagers = new WeakHashMap<>();
+
+    private static volatile int sQueueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private static volatile int sMaxVisible = DEFAULT_MAX_VISIBLE;
+    private static volatile @GFMinimalNotification.OverflowPolicy int sOverflowPolicy =
+            GFMinimalNotification.OVERFLOW_DROP_OLDEST;
+    private static volatile long sCoalescingWindowMs = DEFAULT_COALESCING_WINDOW_MS;
+    private static final GFMinimalNotificationRateLimiter sRateLimiter = new GFMinimalNotificationRateLimiter();
+
+    /**
+     * Return the manager for notifications shown within the given parent, creating it if needed.
+     * Safe to call from any thread.
+     *
+     * <p>The records of a manager hold their GFNotification, and so the parent it is keyed by. The
+     * manager lets go of all of them once the parent leaves its window, or the parent could never
+     * be collected.
+     */
+    static GFMinimalNotificationManager get(final ViewGroup host) {
+        synchronized (sManagers) {
+            GFMinimalNotificationManager manager = sManagers.get(host);
+            if (manager == null) {
+                manager = new GFMinimalNotificationManager();
+                sManagers.put(host, manager);
+                final View.OnAttachStateChangeListener listener = manager.mParentListener;
+                if (isMainThread()) {
+                    host.addOnAttachStateChangeListener(listener);
+                } else {
+                    manager.mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            host.addOnAttachStateChangeListener(listener);
+                        }
+                    });
+                }
+            }
+            return manager;
+        }
+    }
+
+    /**
+     * Return a snapshot of every manager, a manager may be added while they are called into
+     */
+    private static ArrayList<GFMinimalNotificationManager> getAll() {
+        synchronized (sManagers) {
+            return new ArrayList<>(sManagers.values());
+        }
+    }
+
+    static GFMinimalNotificationRateLimiter getRateLimiter() {
+        return sRateLimiter;
+    }
+
+    /**
+     * Update the maximum number of notifications waiting to be shown per manager. If more are
+     * waiting, the excess is dropped according to the overflow policy the next time one is queued.
+     */
+    static void setQueueCapacity(int capacity) {
+        sQueueCapacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Update the maximum number of notifications each manager shows at once. Takes effect the next
+     * time a notification is shown or dismissed.
+     */
+    static void setMaxVisible(int maxVisible) {
+        sMaxVisible = Math.max(1, maxVisible);
+    }
+
+    static void setOverflowPolicy(@GFMinimalNotification.OverflowPolicy int overflowPolicy) {
+        sOverflowPolicy = overflowPolicy;
+    }
+
+    static void setCoalescingWindow(long windowMs) {
+        sCoalescingWindowMs = windowMs;
+    }
+
+    /**
+     * Should be called when the given Activity has stopped. The timeouts of the GFNotifications it
+     * shows are paused and those it queued are held back until it starts again. Must be called on
+     * the main thread.
+     */
+    static void notifyHostStopped(Activity host) {
+        final ArrayList<GFMinimalNotificationManager> managers = getAll();
+        for (int i = 0; i < managers.size(); i++) {
+            managers.get(i).onHostStopped(host);
+        }
+    }
+
+    /**
+     * Should be called when the given Activity has started again after being stopped. Must be
+     * called on the main thread.
+     */
+    static void notifyHostStarted(Activity host) {
+        final ArrayList<GFMinimalNotificationManager> managers = getAll();
+        for (int i = 0; i < managers.size(); i++) {
+            managers.get(i).onHostStarted(host);
+        }
+    }
+
+    /**
+     * Should be called when the given Activity is being destroyed. Every GFNotification it queued is
+     * dropped and every one it shows is removed straight away, without an exit animation. Must be
+     * called on the main thread.
+     */
+    static void notifyHostDestroyed(Activity host) {
+        final ArrayList<GFMinimalNotificationManager> managers = getAll();
+        for (int i = 0; i < managers.size(); i++) {
+            managers.get(i).onHostDestroyed(host);
         }
-        return sManager;
     }
 
-    private final Object mLock;
     private final Handler mHandler;
 
-    private Record mCurrentNotification;
-    private Record mNextNotification;
+    private final View.OnAttachStateChangeListener mParentListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View view) {
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View view) {
+            // Nothing will be shown within it anymore, as for an Activity being destroyed
+            removeHostedBy(null);
+        }
+    };
+
+    // The records shown, oldest first
+    private Record[] mVisible;
+    private int mVisibleCount;
+
+    // Binary min-heap of the records with a timeout running, ordered by the time each was keyed at.
+    // A key is never later than the record's deadline, records pushed back are fixed up lazily once
+    // their key comes up. Records paused, dismissed or removed leave the heap straight away
+    private Record[] mTimers;
+    private int mTimerCount;
+    // When the single pending timeout message is due, Long.MAX_VALUE when none is pending
+    private long mTimerPostedAt = Long.MAX_VALUE;
 
-    private GFMinimalNotificationManager() {
-        mLock = new Object();
+    // Binary max-heap of the records waiting to be shown, ordered by priority and then by the
+    // order they were queued in
+    private Record[] mQueue;
+    private int mQueueSize;
+    private long mNextSequence;
+    // The queued records of each priority, lowest priority first, each linked in the order they were
+    // queued in. Lets the overflow policy find the record to drop without going through the heap
+    private final Record[] mQueueHeads = new Record[PRIORITY_LEVELS];
+    private final Record[] mQueueTails = new Record[PRIORITY_LEVELS];
+
+    /**
+     * Create a manager of its own, not shared with any parent. Use {@link #get(ViewGroup)} for the
+     * manager of a parent.
+     */
+    GFMinimalNotificationManager() {
         mHandler = new Handler(Looper.getMainLooper(), new Handler.Callback() {
             @Override
             public boolean handleMessage(Message message) {
                 switch (message.what) {
                     case MSG_TIMEOUT:
-                        handleTimeout((Record) message.obj);
+                        handleTimeout();
+                        return true;
+                    case MSG_SHOW:
+                        handleShow((Record) message.obj);
+                        return true;
+                    case MSG_DISMISS:
+                        handleDismiss((Record) message.obj, message.arg1);
+                        return true;
+                    case MSG_SHOW_ALL:
+                        handleShowAll((Record[]) message.obj, message.arg1, message.arg2);
                         return true;
                 }
                 return false;
             }
         });
+        mQueue = new Record[DEFAULT_QUEUE_CAPACITY];
+        mVisible = new Record[DEFAULT_MAX_VISIBLE];
+        mTimers = new Record[DEFAULT_MAX_VISIBLE];
     }
 
-    void show(int duration, Callback callback) {
-        synchronized (mLock) {
-            if (isCurrentNotificationLocked(callback)) {
-                // Means that the callback is already in the queue. We'll just update the duration
-                mCurrentNotification.duration = duration;
+    /**
+     * Return the number of records waiting to be shown. Only exact on the main thread.
+     */
+    int getQueueSize() {
+        return mQueueSize;
+    }
 
-                // If this is the GFNotification currently being shown, call re-schedule it's
-                // timeout
-                mHandler.removeCallbacksAndMessages(mCurrentNotification);
-                scheduleTimeoutLocked(mCurrentNotification);
-                return;
-            } else if (isNextNotificationLocked(callback)) {
-                // We'll just update the duration
-                mNextNotification.duration = duration;
+    void show(Record record, int duration, @GFMinimalNotification.Type int type,
+              @GFMinimalNotification.Priority int priority, String coalescingKey) {
+        record.stage(duration, type, priority, coalescingKey);
+        // Read as shown or queued from now on, even before the main thread gets to it
+        record.compareAndSetState(Record.STATE_IDLE, Record.STATE_PENDING);
+
+        if (isMainThread()) {
+            handleShow(record);
+        } else {
+            // One message per call, so that shows and dismisses reach the queue in the order made
+            mHandler.sendMessage(Message.obtain(mHandler, MSG_SHOW, record));
+        }
+    }
+
+    /**
+     * Queue the given range of records at once and only then show the head of the queue, a single
+     * message is posted when called off the main thread. Each record must have been
+     * {@link Record#stage staged}, and the range must not change afterwards.
+     */
+    void showAll(Record[] records, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            records[i].compareAndSetState(Record.STATE_IDLE, Record.STATE_PENDING);
+        }
+        if (isMainThread()) {
+            handleShowAll(records, offset, count);
+        } else {
+            mHandler.sendMessage(Message.obtain(mHandler, MSG_SHOW_ALL, offset, count, records));
+        }
+    }
+
+    void dismiss(Record record, int event) {
+        if (isMainThread()) {
+            handleDismiss(record, event);
+        } else {
+            // Even if idle, a show made earlier from this thread may not have reached the queue yet
+            mHandler.sendMessage(Message.obtain(mHandler, MSG_DISMISS, event, 0, record));
+        }
+    }
+
+    /**
+     * Should be called when a GFNotification is no longer displayed. This is after any exit
+     * animation has finished. Must be called on the main thread.
+     */
+    void onDismissed(Record record) {
+        if (isCurrentNotification(record)) {
+            // If the record is from a GFNotification currently shown, remove it and show a new one
+            removeVisible(record);
+            if (record.showAgain) {
+                // Shown again on its way out, it waits in line like any other
+                record.showAgain = false;
+                record.state = Record.STATE_PENDING;
+                queueRecord(record);
             } else {
-                // Else, we need to create a new record and queue it
-                mNextNotification = new Record(duration, callback);
+                record.state = Record.STATE_IDLE;
             }
+            showNextNotification();
+        }
+    }
 
-            if (mCurrentNotification != null && cancelNotificationLocked(mCurrentNotification,
-                    GFMinimalNotification.Callback.DISMISS_EVENT_CONSECUTIVE)) {
-                // If we currently have a GFNotification, try and cancel it and wait in line
-                return;
-            } else {
-                // Clear out the current GFNotification
-                mCurrentNotification = null;
-                // Otherwise, just show it now
-                showNextNotificationLocked();
+    /**
+     * Should be called when a GFNotification is being shown. This is after any entrance animation has
+     * finished. Must be called on the main thread.
+     */
+    void onShown(Record record) {
+        if (isCurrentNotification(record)) {
+            record.shown = true;
+            scheduleTimeout(record);
+        }
+    }
+
+    /**
+     * Freeze the record's timeout for the given reason, keeping the time it has left. The timeout
+     * stays frozen until every reason it was paused for has been resumed. Must be called on the main
+     * thread.
+     *
+     * @param reason One of {@link #PAUSE_TOUCH}, {@link #PAUSE_WINDOW_FOCUS},
+     *               {@link #PAUSE_WINDOW_HIDDEN} or {@link #PAUSE_HOST_STOPPED}
+     */
+    void pauseTimeout(Record record, int reason) {
+        if (!isCurrentNotification(record)) {
+            return;
+        }
+        if (record.pauseReasons == 0) {
+            record.remaining = record.deadline != 0
+                    ? Math.max(0, record.deadline - SystemClock.uptimeMillis()) : -1;
+            stopTimer(record);
+        }
+        record.pauseReasons |= reason;
+    }
+
+    /**
+     * Resume the record's timeout for the given reason, running it for only the time it had left
+     * once no other reason holds it. Must be called on the main thread.
+     */
+    void resumeTimeout(Record record, int reason) {
+        if (!isCurrentNotification(record) || (record.pauseReasons & reason) == 0) {
+            return;
+        }
+        record.pauseReasons &= ~reason;
+        if (record.pauseReasons == 0 && record.remaining >= 0) {
+            startTimer(record, SystemClock.uptimeMillis() + record.remaining);
+            record.remaining = -1;
+        }
+    }
+
+    private void onHostStopped(Activity host) {
+        for (int i = 0; i < mVisibleCount; i++) {
+            if (mVisible[i].isHostedBy(host)) {
+                pauseTimeout(mVisible[i], PAUSE_HOST_STOPPED);
             }
         }
     }
 
-    void dismiss(Callback callback, int event) {
-        synchronized (mLock) {
-            if (isCurrentNotificationLocked(callback)) {
-                cancelNotificationLocked(mCurrentNotification, event);
-            } else if (isNextNotificationLocked(callback)) {
-                cancelNotificationLocked(mNextNotification, event);
+    private void onHostStarted(Activity host) {
+        for (int i = 0; i < mVisibleCount; i++) {
+            if (mVisible[i].isHostedBy(host)) {
+                resumeTimeout(mVisible[i], PAUSE_HOST_STOPPED);
             }
         }
+        // Show anything held back while it was stopped
+        showNextNotification();
+    }
+
+    private void onHostDestroyed(Activity host) {
+        removeHostedBy(host);
     }
 
     /**
-     * Should be called when a GFNotification is no longer displayed. This is after any exit
-     * animation has finished.
-     */
-    void onDismissed(Callback callback) {
-        synchronized (mLock) {
-            if (isCurrentNotificationLocked(callback)) {
-                // If the callback is from a GFNotification currently shown, remove it and show a new one
-                mCurrentNotification = null;
-                if (mNextNotification != null) {
-                    showNextNotificationLocked();
+     * Drop the queued records, and remove the records shown, of the given Activity, or all of them
+     * if null
+     */
+    private void removeHostedBy(Activity host) {
+        // Drop the queued records first so that none of them takes the place of those we remove
+        int size = 0;
+        for (int i = 0; i < mQueueSize; i++) {
+            final Record record = mQueue[i];
+            if (host == null || record.isHostedBy(host)) {
+                unlinkQueued(record);
+                record.queueIndex = -1;
+                record.state = Record.STATE_IDLE;
+                record.callback.discard();
+            } else {
+                mQueue[size] = record;
+                record.queueIndex = size;
+                size++;
+            }
+        }
+        if (size != mQueueSize) {
+            Arrays.fill(mQueue, size, mQueueSize, null);
+            mQueueSize = size;
+            for (int i = (mQueueSize >> 1) - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        // Removing a record only shifts those after it, which we have already been through
+        for (int i = mVisibleCount - 1; i >= 0; i--) {
+            final Record record = mVisible[i];
+            if (host == null || record.isHostedBy(host)) {
+                record.showAgain = false;
+                // Calls back through onDismissed
+                record.callback.remove();
+                if (isCurrentNotification(record)) {
+                    // It did not call back
+                    removeVisible(record);
+                    record.state = Record.STATE_IDLE;
                 }
             }
         }
+        showNextNotification();
+    }
+
+    boolean isCurrent(Record record) {
+        final int state = record.state;
+        return state == Record.STATE_SHOWN || state == Record.STATE_DISMISSING;
+    }
+
+    boolean isCurrentOrNext(Record record) {
+        return record.state != Record.STATE_IDLE;
     }
 
     /**
-     * Should be called when a GFNotification is being shown. This is after any entrance animation has
-     * finished.
+     * A GFNotification's place within the manager. Each GFNotification owns a single record which
+     * is reused every time it is shown.
+     *
+     * <p>The record holds its GFNotification strongly, so that one made and shown without being
+     * referenced waits in line for as long as it takes. The manager only references records that are
+     * pending, queued, shown or timed out, a record left idle does not keep its GFNotification.
      */
-    void onShown(Callback callback) {
-        synchronized (mLock) {
-            if (isCurrentNotificationLocked(callback)) {
-                scheduleTimeoutLocked(mCurrentNotification);
+    static final class Record {
+        static final int STATE_IDLE = 0;
+        // Shown off the main thread, waiting for the main thread to queue it
+        static final int STATE_PENDING = 1;
+        static final int STATE_QUEUED = 2;
+        static final int STATE_SHOWN = 3;
+        static final int STATE_DISMISSING = 4;
+
+        private static final AtomicIntegerFieldUpdater<Record> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Record.class, "state");
+
+        private final Callback callback;
+        // The Activity the GFNotification is shown within, if known
+        private final WeakReference<Activity> host;
+        private volatile int state;
+
+        // Guarded by the record itself, written from any thread
+        private int pendingDuration;
+        private @GFMinimalNotification.Type int pendingType;
+        private @GFMinimalNotification.Priority int pendingPriority;
+        private String pendingCoalescingKey;
+
+        // Only accessed on the main thread
+        private int duration;
+        private @GFMinimalNotification.Type int type;
+        private @GFMinimalNotification.Priority int priority;
+        private long sequence;
+        private int queueIndex = -1;
+        private int queueLevel;
+        private Record queuePrevious;
+        private Record queueNext;
+        private int visibleIndex = -1;
+        // The uptime the record times out at, 0 when it has no timeout running
+        private long deadline;
+        private long timerKey;
+        private int timerIndex = -1;
+        private int pauseReasons;
+        // The time left when paused, -1 when there was no timeout running
+        private long remaining = -1;
+        private boolean shown;
+        // Shown again while dismissing, to be queued once gone
+        private boolean showAgain;
+        private String coalescingKey;
+        private int repeatCount;
+        private long lastUpdated;
+
+        Record(Callback callback) {
+            this(callback, null);
+        }
+
+        Record(Callback callback, Activity host) {
+            this.callback = callback;
+            this.host = host != null ? new WeakReference<>(host) : null;
+        }
+
+        /**
+         * Stage the values the record is shown with, kept until the main thread picks the request up
+         * as the queue may be reading the live values
+         */
+        synchronized void stage(int duration, @GFMinimalNotification.Type int type,
+                                @GFMinimalNotification.Priority int priority, String coalescingKey) {
+            pendingDuration = duration;
+            pendingType = type;
+            pendingPriority = priority;
+            pendingCoalescingKey = coalescingKey;
+        }
+
+        /**
+         * Take up the values last staged, all of them from the same call. Main thread only.
+         */
+        synchronized void takeStaged() {
+            duration = pendingDuration;
+            type = pendingType;
+            priority = pendingPriority;
+            coalescingKey = pendingCoalescingKey;
+        }
+
+        boolean compareAndSetState(int expect, int update) {
+            return STATE.compareAndSet(this, expect, update);
+        }
+
+        boolean isQueued() {
+            return queueIndex >= 0;
+        }
+
+        boolean isHostedBy(Activity activity) {
+            return host != null && host.get() == activity;
+        }
+
+        /**
+         * Whether the record's Activity is stopped, in which case it waits in line until it starts
+         */
+        boolean isHeldBack() {
+            return host != null && GFMinimalNotificationLifecycle.isStopped(host.get());
+        }
+    }
+
+    private void handleShow(Record record) {
+        TraceCompat.beginSection("GFMinimalNotificationManager#show");
+        try {
+            // Dismissed, or done being shown, since it was posted, this later show stands
+            record.compareAndSetState(Record.STATE_IDLE, Record.STATE_PENDING);
+            showRecord(record);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private void handleShowAll(Record[] records, int offset, int count) {
+        TraceCompat.beginSection("GFMinimalNotificationManager#showAll");
+        try {
+            boolean queued = false;
+            for (int i = offset; i < offset + count; i++) {
+                queued |= queueRecord(records[i]);
             }
+            if (queued) {
+                showQueued();
+            }
+        } finally {
+            TraceCompat.endSection();
         }
     }
 
-    void cancelTimeout(Callback callback) {
-        synchronized (mLock) {
-            if (isCurrentNotificationLocked(callback)) {
-                mHandler.removeCallbacksAndMessages(mCurrentNotification);
+    private void showRecord(Record record) {
+        if (queueRecord(record)) {
+            showQueued();
+        }
+    }
+
+    /**
+     * Take up the record's staged values and queue it, unless it is shown, merged or dropped.
+     *
+     * @return true if the record is waiting in the queue
+     */
+    private boolean queueRecord(Record record) {
+        if (record.state == Record.STATE_IDLE) {
+            // Dismissed before we got to it
+            return false;
+        }
+
+        record.takeStaged();
+
+        if (isCurrentNotification(record)) {
+            if (record.state == Record.STATE_DISMISSING) {
+                // On its way out, show it again once it is gone
+                record.showAgain = true;
+            } else if (record.shown) {
+                // If this is the GFNotification currently being shown, call re-schedule it's
+                // timeout
+                scheduleTimeout(record);
+            }
+            return false;
+        } else if (record.isQueued()) {
+            // Means that the record is already in the queue, its priority may have changed
+            if (record.queueLevel != level(record.priority)) {
+                unlinkQueued(record);
+                linkQueued(record);
             }
+            siftUp(siftDown(record.queueIndex));
+        } else if (record.coalescingKey != null && coalesce(record)) {
+            // Merged into an identical GFNotification, there is nothing left to show
+            record.state = Record.STATE_IDLE;
+            return false;
+        } else if (!throttle(record)) {
+            // Over the rate limit for its type, the GFNotification was dropped or merged
+            record.state = Record.STATE_IDLE;
+            return false;
+        } else if (!enqueue(record)) {
+            // The queue is full and the overflow policy rejected this GFNotification
+            record.state = Record.STATE_IDLE;
+            return false;
         }
+
+        return true;
     }
 
-    void restoreTimeout(Callback callback) {
-        synchronized (mLock) {
-            if (isCurrentNotificationLocked(callback)) {
-                scheduleTimeoutLocked(mCurrentNotification);
+    /**
+     * Show the head of the queue, in place of the least important GFNotification shown if every slot
+     * is taken
+     */
+    private void showQueued() {
+        if (mVisibleCount < sMaxVisible) {
+            showNextNotification();
+            return;
+        }
+
+        final int next = findNextIndex();
+        if (next < 0) {
+            // Everything queued is held back
+            return;
+        }
+
+        // Every slot is taken, find the least important GFNotification shown, the oldest of them
+        Record least = null;
+        for (int i = 0; i < mVisibleCount; i++) {
+            final Record visible = mVisible[i];
+            if (visible.state == Record.STATE_DISMISSING) {
+                // We are already waiting on a GFNotification to leave, the head of the queue will
+                // be shown once it has
+                return;
             }
+            if (least == null || visible.priority < least.priority) {
+                least = visible;
+            }
+        }
+
+        if (mQueue[next].priority >= least.priority) {
+            // The head of the queue is at least as important, cancel the GFNotification and wait in
+            // line
+            cancelNotification(least, GFMinimalNotification.Callback.DISMISS_EVENT_CONSECUTIVE);
         }
     }
 
-    boolean isCurrent(Callback callback) {
-        synchronized (mLock) {
-            return isCurrentNotificationLocked(callback);
+    private void handleDismiss(Record record, int event) {
+        if (isCurrentNotification(record)) {
+            record.showAgain = false;
+            cancelNotification(record, event);
+        } else if (record.isQueued()) {
+            removeQueued(record.queueIndex);
+            record.state = Record.STATE_IDLE;
+            dispatchDismiss(record, event);
+        } else if (record.compareAndSetState(Record.STATE_PENDING, Record.STATE_IDLE)) {
+            // Dismissed before its show reached the main thread, which must not show it after all
+            mHandler.removeMessages(MSG_SHOW, record);
+            dispatchDismiss(record, event);
         }
     }
 
-    boolean isCurrentOrNext(Callback callback) {
-        synchronized (mLock) {
-            return isCurrentNotificationLocked(callback) || isNextNotificationLocked(callback);
+    /**
+     * Show queued records until every slot is taken or the queue is empty
+     */
+    private void showNextNotification() {
+        int next;
+        while (mVisibleCount < sMaxVisible && (next = findNextIndex()) >= 0) {
+            final Record record = removeQueued(next);
+            record.shown = false;
+            stopTimer(record);
+            record.pauseReasons = 0;
+            record.remaining = -1;
+            record.lastUpdated = SystemClock.uptimeMillis();
+            record.state = Record.STATE_SHOWN;
+            addVisible(record);
+            dispatchEvent(record, GFMinimalNotificationEventListener.EVENT_DEQUEUED);
+            record.callback.show();
         }
     }
 
-    private static class Record {
-        private final WeakReference<Callback> callback;
-        private int duration;
+    /**
+     * Return the index of the queued record to show next, skipping those held back while their
+     * Activity is stopped, or -1 if there is none
+     */
+    private int findNextIndex() {
+        if (mQueueSize == 0) {
+            return -1;
+        }
+        if (!GFMinimalNotificationLifecycle.hasStoppedActivities() || !mQueue[0].isHeldBack()) {
+            return 0;
+        }
+        int index = -1;
+        for (int i = 1; i < mQueueSize; i++) {
+            if (!mQueue[i].isHeldBack() && (index < 0 || compare(mQueue[i], mQueue[index]) < 0)) {
+                index = i;
+            }
+        }
+        return index;
+    }
 
-        Record(int duration, Callback callback) {
-            this.callback = new WeakReference<>(callback);
-            this.duration = duration;
+    private void addVisible(Record record) {
+        if (mVisibleCount == mVisible.length) {
+            mVisible = Arrays.copyOf(mVisible, mVisibleCount * 2);
         }
+        mVisible[mVisibleCount] = record;
+        record.visibleIndex = mVisibleCount;
+        mVisibleCount++;
+    }
+
+    private void removeVisible(Record record) {
+        final int index = record.visibleIndex;
+        mVisibleCount--;
+        for (int i = index; i < mVisibleCount; i++) {
+            mVisible[i] = mVisible[i + 1];
+            mVisible[i].visibleIndex = i;
+        }
+        mVisible[mVisibleCount] = null;
+        record.visibleIndex = -1;
+        stopTimer(record);
+        record.pauseReasons = 0;
+        record.remaining = -1;
+    }
 
-        boolean isNotification(Callback callback) {
-            return callback != null && this.callback.get() == callback;
+    /**
+     * Move the current record to dismissing and have it leave. Only the first request wins, the exit
+     * is never restarted.
+     */
+    private void cancelNotification(Record record, int event) {
+        if (record.compareAndSetState(Record.STATE_SHOWN, Record.STATE_DISMISSING)) {
+            // Make sure the NotificationRecord does not time out on its way out
+            stopTimer(record);
+            dispatchDismiss(record, event);
         }
     }
 
-    private void showNextNotificationLocked() {
-        if (mNextNotification != null) {
-            mCurrentNotification = mNextNotification;
-            mNextNotification = null;
+    private static void dispatchDismiss(Record record, int event) {
+        record.callback.dismiss(event);
+    }
 
-            final Callback callback = mCurrentNotification.callback.get();
-            if (callback != null) {
-                callback.show();
-            } else {
-                // The callback doesn't exist any more, clear out the GFNotification
-                mCurrentNotification = null;
+    private boolean isCurrentNotification(Record record) {
+        return record != null && record.visibleIndex >= 0;
+    }
+
+    private static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * Merge the record into the shown, or queued, record sharing its coalescing key.
+     *
+     * @return true if the record was merged and should not be shown
+     */
+    private boolean coalesce(Record record) {
+        Record target = null;
+        for (int i = 0; i < mVisibleCount; i++) {
+            if (mVisible[i].state == Record.STATE_SHOWN
+                    && record.coalescingKey.equals(mVisible[i].coalescingKey)) {
+                target = mVisible[i];
+                break;
             }
         }
+        if (target == null) {
+            for (int i = 0; i < mQueueSize; i++) {
+                if (record.coalescingKey.equals(mQueue[i].coalescingKey)) {
+                    target = mQueue[i];
+                    break;
+                }
+            }
+        }
+
+        if (target == null || SystemClock.uptimeMillis() - target.lastUpdated > sCoalescingWindowMs) {
+            return false;
+        }
+        merge(record, target);
+        return true;
+    }
+
+    /**
+     * Check the record against the rate limit for its type.
+     *
+     * @return true if the record may be queued, false if it was dropped or merged into another
+     */
+    private boolean throttle(Record record) {
+        switch (sRateLimiter.acquire(record.type, SystemClock.uptimeMillis())) {
+            case GFMinimalNotificationRateLimiter.RESULT_MERGE:
+                Record target = null;
+                for (int i = 0; i < mVisibleCount; i++) {
+                    if (mVisible[i].state == Record.STATE_SHOWN && mVisible[i].type == record.type) {
+                        target = mVisible[i];
+                        break;
+                    }
+                }
+                if (target == null) {
+                    for (int i = 0; i < mQueueSize; i++) {
+                        if (mQueue[i].type == record.type) {
+                            target = mQueue[i];
+                            break;
+                        }
+                    }
+                }
+                if (target != null) {
+                    merge(record, target);
+                    sRateLimiter.onMerged(record.type);
+                    return false;
+                }
+                // Nothing to merge into, fall through and drop it
+            case GFMinimalNotificationRateLimiter.RESULT_DROP:
+                sRateLimiter.onDropped(record.type);
+                record.callback.discard();
+                return false;
+            case GFMinimalNotificationRateLimiter.RESULT_ACCEPT:
+            default:
+                return true;
+        }
     }
 
-    private boolean cancelNotificationLocked(Record record, int event) {
-        final Callback callback = record.callback.get();
-        if (callback != null) {
-            // Make sure we remove any timeouts for the NotificationRecord
-            mHandler.removeCallbacksAndMessages(record);
-            callback.dismiss(event);
-            return true;
+    /**
+     * Merge the record into the target record, which takes on its text and duration. The record
+     * itself will not be shown.
+     */
+    private void merge(Record record, Record target) {
+        target.repeatCount++;
+        target.lastUpdated = SystemClock.uptimeMillis();
+        target.duration = record.duration;
+        if (isCurrentNotification(target) && target.shown) {
+            // Extend the time the GFNotification is shown for
+            scheduleTimeout(target);
+        }
+        target.callback.coalesce(record.callback, target.repeatCount);
+        record.callback.merged();
+    }
+
+    /**
+     * Add the record to the queue, making room according to the overflow policy if needed.
+     *
+     * @return true if the record was queued, false if it was dropped
+     */
+    private boolean enqueue(Record record) {
+        // The capacity may have shrunk since the last GFNotification was queued
+        while (mQueueSize > sQueueCapacity) {
+            evict(findEvicted(null));
+        }
+
+        if (mQueueSize >= sQueueCapacity) {
+            final Record evicted = findEvicted(record);
+            if (evicted == null) {
+                return false;
+            }
+            evict(evicted);
+            if (sOverflowPolicy == GFMinimalNotification.OVERFLOW_COALESCE
+                    && evicted.priority == record.priority) {
+                // Take over the place in line of the GFNotification we are replacing
+                record.sequence = evicted.sequence;
+                insert(record);
+                return true;
+            }
         }
-        return false;
+
+        record.sequence = mNextSequence++;
+        insert(record);
+        return true;
     }
 
-    private boolean isCurrentNotificationLocked(Callback callback) {
-        return mCurrentNotification != null && mCurrentNotification.isNotification(callback);
+    private void insert(Record record) {
+        record.state = Record.STATE_QUEUED;
+        record.repeatCount = 1;
+        record.lastUpdated = SystemClock.uptimeMillis();
+        push(record);
+        dispatchEvent(record, GFMinimalNotificationEventListener.EVENT_ENQUEUED);
     }
 
-    private boolean isNextNotificationLocked(Callback callback) {
-        return mNextNotification != null && mNextNotification.isNotification(callback);
+    /**
+     * Drop the queued record, it will not be shown
+     */
+    private void evict(Record record) {
+        removeQueued(record.queueIndex);
+        record.state = Record.STATE_IDLE;
+        record.callback.discard();
     }
 
-    private void scheduleTimeoutLocked(Record r) {
-        if (r.duration == GFMinimalNotification.LENGTH_INDEFINITE) {
-            // If we're set to indefinite, we don't want to set a timeout
-            return;
+    /**
+     * @param incoming The record waiting to be queued, if any
+     * @return the queued record to drop, or null if the incoming record should be dropped instead
+     */
+    private Record findEvicted(Record incoming) {
+        switch (sOverflowPolicy) {
+            case GFMinimalNotification.OVERFLOW_COALESCE:
+                if (incoming != null && mQueueTails[level(incoming.priority)] != null) {
+                    // Replace the most recently queued GFNotification of the same priority
+                    return mQueueTails[level(incoming.priority)];
+                }
+                // Nothing to coalesce with, fall through and drop the lowest priority instead
+            case GFMinimalNotification.OVERFLOW_DROP_LOWEST_PRIORITY:
+                // The newest of the lowest priority queued
+                for (int level = 0; level < PRIORITY_LEVELS; level++) {
+                    if (mQueueTails[level] != null) {
+                        return incoming != null && level(incoming.priority) < level
+                                ? null : mQueueTails[level];
+                    }
+                }
+                return null;
+            case GFMinimalNotification.OVERFLOW_DROP_OLDEST:
+            default:
+                // The oldest is at the head of one of the priorities
+                Record oldest = null;
+                for (int level = 0; level < PRIORITY_LEVELS; level++) {
+                    final Record head = mQueueHeads[level];
+                    if (head != null && (oldest == null || head.sequence < oldest.sequence)) {
+                        oldest = head;
+                    }
+                }
+                return oldest;
         }
+    }
 
-        int durationMs = EXTRA_LONG_DURATION_MS;
-        if (r.duration > 1) {
+    private static int level(@GFMinimalNotification.Priority int priority) {
+        return priority - GFMinimalNotification.PRIORITY_LOW;
+    }
+
+    /**
+     * Link the record into the list of its priority, in the order it was queued in. Records are
+     * queued with the newest sequence, or that of the newest record they replace, so only a queued
+     * record changing priority has to walk back past any other.
+     */
+    private void linkQueued(Record record) {
+        final int level = level(record.priority);
+        Record previous = mQueueTails[level];
+        while (previous != null && previous.sequence > record.sequence) {
+            previous = previous.queuePrevious;
+        }
+        final Record next = previous != null ? previous.queueNext : mQueueHeads[level];
+        record.queueLevel = level;
+        record.queuePrevious = previous;
+        record.queueNext = next;
+        if (previous != null) {
+            previous.queueNext = record;
+        } else {
+            mQueueHeads[level] = record;
+        }
+        if (next != null) {
+            next.queuePrevious = record;
+        } else {
+            mQueueTails[level] = record;
+        }
+    }
+
+    private void unlinkQueued(Record record) {
+        if (record.queuePrevious != null) {
+            record.queuePrevious.queueNext = record.queueNext;
+        } else {
+            mQueueHeads[record.queueLevel] = record.queueNext;
+        }
+        if (record.queueNext != null) {
+            record.queueNext.queuePrevious = record.queuePrevious;
+        } else {
+            mQueueTails[record.queueLevel] = record.queuePrevious;
+        }
+        record.queuePrevious = null;
+        record.queueNext = null;
+    }
+
+    private void push(Record record) {
+        if (mQueueSize == mQueue.length) {
+            mQueue = Arrays.copyOf(mQueue, mQueueSize * 2);
+        }
+        mQueue[mQueueSize] = record;
+        record.queueIndex = mQueueSize;
+        mQueueSize++;
+        siftUp(record.queueIndex);
+        linkQueued(record);
+    }
+
+    private Record removeQueued(int index) {
+        final Record record = mQueue[index];
+        unlinkQueued(record);
+        mQueueSize--;
+        if (index != mQueueSize) {
+            final Record last = mQueue[mQueueSize];
+            mQueue[index] = last;
+            last.queueIndex = index;
+            siftUp(siftDown(index));
+        }
+        mQueue[mQueueSize] = null;
+        record.queueIndex = -1;
+        return record;
+    }
+
+    private int siftUp(int index) {
+        final Record record = mQueue[index];
+        while (index > 0) {
+            final int parent = (index - 1) >> 1;
+            if (compare(record, mQueue[parent]) >= 0) {
+                break;
+            }
+            mQueue[index] = mQueue[parent];
+            mQueue[index].queueIndex = index;
+            index = parent;
+        }
+        mQueue[index] = record;
+        record.queueIndex = index;
+        return index;
+    }
+
+    private int siftDown(int index) {
+        final Record record = mQueue[index];
+        final int half = mQueueSize >> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            if (child + 1 < mQueueSize && compare(mQueue[child + 1], mQueue[child]) < 0) {
+                child++;
+            }
+            if (compare(record, mQueue[child]) <= 0) {
+                break;
+            }
+            mQueue[index] = mQueue[child];
+            mQueue[index].queueIndex = index;
+            index = child;
+        }
+        mQueue[index] = record;
+        record.queueIndex = index;
+        return index;
+    }
+
+    /**
+     * Orders records by priority, highest first, and then by the order they were queued in.
+     */
+    private static int compare(Record lhs, Record rhs) {
+        if (lhs.priority != rhs.priority) {
+            return lhs.priority > rhs.priority ? -1 : 1;
+        }
+        return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+    }
+
+    private void scheduleTimeout(Record r) {
+        int durationMs = -1;
+        if (r.duration == GFMinimalNotification.LENGTH_INDEFINITE) {
+            // If we're set to indefinite, we don't want to set a timeout
+        } else if (r.duration > 1) {
             durationMs = r.duration;
         } else if (r.duration == GFMinimalNotification.LENGTH_LONG) {
             durationMs = LONG_DURATION_MS;
         } else if (r.duration == GFMinimalNotification.LENGTH_SHORT) {
             durationMs = SHORT_DURATION_MS;
+        } else {
+            durationMs = EXTRA_LONG_DURATION_MS;
+        }
+
+        if (r.pauseReasons != 0) {
+            // Runs in full once resumed
+            stopTimer(r);
+            r.remaining = durationMs;
+        } else if (durationMs < 0) {
+            stopTimer(r);
+        } else {
+            startTimer(r, SystemClock.uptimeMillis() + durationMs);
+        }
+    }
+
+    /**
+     * Set the record's deadline. Only moves the record within the timer heap when the deadline is
+     * earlier than its key, a later deadline is picked up once the key comes up.
+     */
+    private void startTimer(Record record, long deadline) {
+        record.deadline = deadline;
+        if (record.timerIndex < 0) {
+            record.timerKey = deadline;
+            pushTimer(record);
+        } else if (deadline < record.timerKey) {
+            record.timerKey = deadline;
+            siftUpTimer(record.timerIndex);
         }
-        mHandler.removeCallbacksAndMessages(r);
-        mHandler.sendMessageDelayed(Message.obtain(mHandler, MSG_TIMEOUT, r), durationMs);
+        postTimer();
     }
 
-    private void handleTimeout(Record record) {
-        synchronized (mLock) {
-            if (mCurrentNotification == record || mNextNotification == record) {
-                cancelNotificationLocked(record, GFMinimalNotification.Callback.DISMISS_EVENT_TIMEOUT);
+    /**
+     * Clear the record's deadline and take it out of the timer heap, so that the heap does not hold
+     * on to it, and its GFNotification, until its key comes up
+     */
+    private void stopTimer(Record record) {
+        record.deadline = 0;
+        if (record.timerIndex >= 0) {
+            removeTimer(record.timerIndex);
+        }
+    }
+
+    /**
+     * Make sure the single timeout message is due no later than the earliest key
+     */
+    private void postTimer() {
+        if (mTimerCount == 0 || mTimers[0].timerKey >= mTimerPostedAt) {
+            return;
+        }
+        if (mTimerPostedAt != Long.MAX_VALUE) {
+            // Only ever needed for a deadline earlier than every other
+            mHandler.removeMessages(MSG_TIMEOUT);
+        }
+        mTimerPostedAt = mTimers[0].timerKey;
+        mHandler.sendEmptyMessageAtTime(MSG_TIMEOUT, mTimerPostedAt);
+    }
+
+    private void handleTimeout() {
+        mTimerPostedAt = Long.MAX_VALUE;
+        final long now = SystemClock.uptimeMillis();
+        while (mTimerCount > 0 && mTimers[0].timerKey <= now) {
+            final Record record = mTimers[0];
+            if (record.deadline > now) {
+                // Pushed back since it was keyed
+                record.timerKey = record.deadline;
+                siftDownTimer(0);
+            } else {
+                removeTimer(0);
+                record.deadline = 0;
+                if (isCurrentNotification(record)) {
+                    dispatchEvent(record, GFMinimalNotificationEventListener.EVENT_TIMEOUT);
+                    cancelNotification(record, GFMinimalNotification.Callback.DISMISS_EVENT_TIMEOUT);
+                }
+            }
+        }
+        postTimer();
+    }
+
+    private void pushTimer(Record record) {
+        if (mTimerCount == mTimers.length) {
+            mTimers = Arrays.copyOf(mTimers, mTimerCount * 2);
+        }
+        mTimers[mTimerCount] = record;
+        record.timerIndex = mTimerCount;
+        mTimerCount++;
+        siftUpTimer(record.timerIndex);
+    }
+
+    private void removeTimer(int index) {
+        final Record record = mTimers[index];
+        mTimerCount--;
+        if (index != mTimerCount) {
+            final Record last = mTimers[mTimerCount];
+            mTimers[index] = last;
+            last.timerIndex = index;
+            siftDownTimer(index);
+            siftUpTimer(last.timerIndex);
+        }
+        mTimers[mTimerCount] = null;
+        record.timerIndex = -1;
+    }
+
+    private void siftUpTimer(int index) {
+        final Record record = mTimers[index];
+        while (index > 0) {
+            final int parent = (index - 1) >> 1;
+            if (record.timerKey >= mTimers[parent].timerKey) {
+                break;
+            }
+            mTimers[index] = mTimers[parent];
+            mTimers[index].timerIndex = index;
+            index = parent;
+        }
+        mTimers[index] = record;
+        record.timerIndex = index;
+    }
+
+    private void siftDownTimer(int index) {
+        final Record record = mTimers[index];
+        final int half = mTimerCount >> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            if (child + 1 < mTimerCount && mTimers[child + 1].timerKey < mTimers[child].timerKey) {
+                child++;
+            }
+            if (record.timerKey <= mTimers[child].timerKey) {
+                break;
             }
+            mTimers[index] = mTimers[child];
+            mTimers[index].timerIndex = index;
+            index = child;
+        }
+        mTimers[index] = record;
+        record.timerIndex = index;
+    }
+
+    private void dispatchEvent(Record record, @GFMinimalNotificationEventListener.Event int event) {
+        if (GFMinimalNotification.sEventListener != null) {
+            record.callback.onEvent(event, mQueueSize);
         }
     }
 
@@ -220,5 +1180,34 @@ class GFMinimalNotificationManager {
         void show();
 
         void dismiss(int event);
+
+        /**
+         * Called when the GFNotification must be removed straight away, without an exit animation
+         */
+        void remove();
+
+        /**
+         * Called when the given GFNotification has been merged into this one
+         */
+        void coalesce(Callback from, int repeatCount);
+
+        /**
+         * Called when this GFNotification was dropped from the queue, or never queued, and will not be
+         * shown
+         */
+        void discard();
+
+        /**
+         * Called when this GFNotification has been merged into another, it will never be shown and
+         * its view may be recycled
+         */
+        void merged();
+
+        CharSequence getText();
+
+        /**
+         * Called as the GFNotification moves through the queue, only while an event listener is set
+         */
+        void onEvent(@GFMinimalNotificationEventListener.Event int event, int queueDepth);
     }
 }
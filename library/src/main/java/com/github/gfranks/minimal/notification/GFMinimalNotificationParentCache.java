@@ -0,0 +1,97 @@
+package com.github.gfranks.minimal.notification;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Remembers the parent resolved for each anchor view, and the hosts registered per Activity, so
+ * that making a notification does not need to walk the view hierarchy every time. Cached parents
+ * are forgotten once their anchor is detached from its window.
+ */
+final class GFMinimalNotificationParentCache {
+
+    private static final Map<View, WeakReference<ViewGroup>> sParents = new WeakHashMap<>();
+    private static final Map<Activity, WeakReference<ViewGroup>> sHosts = new WeakHashMap<>();
+
+    private static final View.OnAttachStateChangeListener sDetachListener =
+            new View.OnAttachStateChangeListener() {
+                @Override
+                public void onViewAttachedToWindow(View v) {
+                }
+
+                @Override
+                public void onViewDetachedFromWindow(View v) {
+                    v.removeOnAttachStateChangeListener(this);
+                    synchronized (sParents) {
+                        sParents.remove(v);
+                    }
+                }
+            };
+
+    private GFMinimalNotificationParentCache() {
+    }
+
+    /**
+     * Return the host registered for the anchor's Activity, or the parent previously resolved for the
+     * anchor, if any.
+     */
+    static ViewGroup get(View anchor) {
+        final Activity activity = GFMinimalNotificationLifecycle.findActivity(anchor.getContext());
+        if (activity != null) {
+            synchronized (sHosts) {
+                final ViewGroup host = dereference(sHosts.get(activity));
+                if (host != null) {
+                    return host;
+                }
+            }
+        }
+
+        synchronized (sParents) {
+            return dereference(sParents.get(anchor));
+        }
+    }
+
+    /**
+     * Remember the parent resolved for the given anchor until the anchor is detached. Only anchors
+     * attached to a window, on the main thread, are remembered, there is no detach to forget them on
+     * otherwise.
+     */
+    static void put(View anchor, ViewGroup parent) {
+        if (parent == null || Looper.myLooper() != Looper.getMainLooper()
+                || !ViewCompat.isAttachedToWindow(anchor)) {
+            return;
+        }
+
+        synchronized (sParents) {
+            if (sParents.put(anchor, new WeakReference<>(parent)) != null) {
+                // already listening for the detach
+                return;
+            }
+        }
+        anchor.addOnAttachStateChangeListener(sDetachListener);
+    }
+
+    static void registerHost(Activity activity, ViewGroup host) {
+        synchronized (sHosts) {
+            sHosts.put(activity, new WeakReference<>(host));
+        }
+        GFMinimalNotificationLifecycle.watch(activity);
+    }
+
+    static void unregisterHost(Activity activity) {
+        synchronized (sHosts) {
+            sHosts.remove(activity);
+        }
+    }
+
+    private static ViewGroup dereference(WeakReference<ViewGroup> reference) {
+        return reference != null ? reference.get() : null;
+    }
+}
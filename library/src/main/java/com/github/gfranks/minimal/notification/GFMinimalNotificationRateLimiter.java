@@ -0,0 +1,164 @@
+package com.github.gfranks.minimal.notification;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Limits how many notifications of each type may be shown within a sliding window of time. Shows
+ * over the limit are either dropped or merged into a notification of the same type that is already
+ * shown, or waiting to be shown.
+ *
+ * <p>The limiter applies to every notification and is obtained through
+ * {@link GFMinimalNotification#getRateLimiter()}.
+ */
+public final class GFMinimalNotificationRateLimiter {
+
+    /**
+     * @hide
+     */
+    @IntDef({POLICY_DROP, POLICY_MERGE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Policy {}
+
+    /**
+     * Drop notifications shown over the limit
+     *
+     * @see #setLimit
+     */
+    public static final int POLICY_DROP = 0;
+
+    /**
+     * Merge notifications shown over the limit into a shown, or waiting, notification of the same
+     * type, the same way notifications sharing a coalescing key are merged. Notifications with
+     * nothing to merge into are dropped.
+     *
+     * @see #setLimit
+     * @see GFMinimalNotification#setCoalescingKey(String)
+     */
+    public static final int POLICY_MERGE = 1;
+
+    static final int RESULT_ACCEPT = 0;
+    static final int RESULT_DROP = 1;
+    static final int RESULT_MERGE = 2;
+
+    private static final int TYPE_COUNT = 3;
+
+    // Ring buffers of the times shows were accepted at, one per type
+    private final long[][] mAcceptedAt = new long[TYPE_COUNT][];
+    private final int[] mNextSlot = new int[TYPE_COUNT];
+    private final long[] mWindowMs = new long[TYPE_COUNT];
+    private final int[] mPolicy = new int[TYPE_COUNT];
+
+    private final long[] mAcceptedCount = new long[TYPE_COUNT];
+    private final long[] mDroppedCount = new long[TYPE_COUNT];
+    private final long[] mMergedCount = new long[TYPE_COUNT];
+
+    GFMinimalNotificationRateLimiter() {
+    }
+
+    /**
+     * Allow at most {@code maxShows} notifications of the given type to be shown within any window of
+     * {@code windowMs} milliseconds.
+     *
+     * @param type     One of {@link GFMinimalNotification#TYPE_DEFAULT},
+     *                 {@link GFMinimalNotification#TYPE_ERROR} or {@link GFMinimalNotification#TYPE_WARNING}
+     * @param maxShows The number of notifications allowed within the window
+     * @param windowMs The length of the window in milliseconds
+     * @param policy   What to do with notifications over the limit. Either {@link #POLICY_DROP} or
+     *                 {@link #POLICY_MERGE}
+     */
+    public synchronized void setLimit(@GFMinimalNotification.Type int type, int maxShows, long windowMs,
+                                      @Policy int policy) {
+        if (maxShows < 1) {
+            throw new IllegalArgumentException("maxShows must be at least 1");
+        }
+        final int index = indexOf(type);
+        mAcceptedAt[index] = new long[maxShows];
+        mNextSlot[index] = 0;
+        mWindowMs[index] = windowMs;
+        mPolicy[index] = policy;
+    }
+
+    /**
+     * Remove the limit for the given type, if any
+     */
+    public synchronized void clearLimit(@GFMinimalNotification.Type int type) {
+        mAcceptedAt[indexOf(type)] = null;
+    }
+
+    /**
+     * Return the number of notifications of the given type allowed to show
+     */
+    public synchronized long getAcceptedCount(@GFMinimalNotification.Type int type) {
+        return mAcceptedCount[indexOf(type)];
+    }
+
+    /**
+     * Return the number of notifications of the given type dropped for being over the limit
+     */
+    public synchronized long getDroppedCount(@GFMinimalNotification.Type int type) {
+        return mDroppedCount[indexOf(type)];
+    }
+
+    /**
+     * Return the number of notifications of the given type merged into another for being over the
+     * limit
+     */
+    public synchronized long getMergedCount(@GFMinimalNotification.Type int type) {
+        return mMergedCount[indexOf(type)];
+    }
+
+    /**
+     * Reset every counter back to 0
+     */
+    public synchronized void resetCounters() {
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            mAcceptedCount[i] = 0;
+            mDroppedCount[i] = 0;
+            mMergedCount[i] = 0;
+        }
+    }
+
+    /**
+     * Record an attempt to show a notification of the given type.
+     *
+     * @return one of {@link #RESULT_ACCEPT}, {@link #RESULT_DROP} or {@link #RESULT_MERGE}
+     */
+    synchronized int acquire(@GFMinimalNotification.Type int type, long now) {
+        final int index = indexOf(type);
+        final long[] acceptedAt = mAcceptedAt[index];
+        if (acceptedAt != null) {
+            // The slot we would write to holds the oldest accepted show, 0 while the buffer fills
+            final long oldest = acceptedAt[mNextSlot[index]];
+            if (oldest != 0 && now - oldest < mWindowMs[index]) {
+                return mPolicy[index] == POLICY_MERGE ? RESULT_MERGE : RESULT_DROP;
+            }
+            acceptedAt[mNextSlot[index]] = now;
+            mNextSlot[index] = (mNextSlot[index] + 1) % acceptedAt.length;
+        }
+        mAcceptedCount[index]++;
+        return RESULT_ACCEPT;
+    }
+
+    synchronized void onDropped(@GFMinimalNotification.Type int type) {
+        mDroppedCount[indexOf(type)]++;
+    }
+
+    synchronized void onMerged(@GFMinimalNotification.Type int type) {
+        mMergedCount[indexOf(type)]++;
+    }
+
+    private static int indexOf(@GFMinimalNotification.Type int type) {
+        switch (type) {
+            case GFMinimalNotification.TYPE_ERROR:
+                return 1;
+            case GFMinimalNotification.TYPE_WARNING:
+                return 2;
+            case GFMinimalNotification.TYPE_DEFAULT:
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.gfranks.minimal.notification;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.support.v4.view.ViewCompat;
+import android.support.v4.view.animation.FastOutSlowInInterpolator;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Stacks the notifications shown at once within the same parent, the newest nearest the edge they
+ * slide in from. Each older notification is offset by the height of the newer ones. As
+ * notifications come and go, every neighbor moves to its new offset from a single animator.
+ *
+ * <p>Only accessed on the main thread.
+ */
+final class GFMinimalNotificationStack {
+
+    private static final int ANIMATION_DURATION = 250;
+
+    private static final Map<ViewGroup, GFMinimalNotificationStack> sStacks = new WeakHashMap<>();
+
+    static GFMinimalNotificationStack get(ViewGroup parent) {
+        GFMinimalNotificationStack stack = sStacks.get(parent);
+        if (stack == null) {
+            stack = new GFMinimalNotificationStack();
+            sStacks.put(parent, stack);
+        }
+        return stack;
+    }
+
+    // Oldest first
+    private final ArrayList<GFMinimalNotificationLayout> mViews = new ArrayList<>();
+    private final ArrayList<GFMinimalNotificationLayout> mMoving = new ArrayList<>();
+    private float[] mMovingFrom = new float[4];
+    private final ValueAnimator mAnimator;
+
+    private GFMinimalNotificationStack() {
+        mAnimator = ValueAnimator.ofFloat(0f, 1f);
+        mAnimator.setDuration(ANIMATION_DURATION);
+        mAnimator.setInterpolator(new FastOutSlowInInterpolator());
+        mAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                final float fraction = animation.getAnimatedFraction();
+                for (int i = 0; i < mMoving.size(); i++) {
+                    final GFMinimalNotificationLayout view = mMoving.get(i);
+                    if (!view.isTransitioning()) {
+                        ViewCompat.setTranslationY(view, mMovingFrom[i]
+                                + (view.getStackOffset() - mMovingFrom[i]) * fraction);
+                    }
+                }
+            }
+        });
+        mAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                mMoving.clear();
+            }
+        });
+    }
+
+    /**
+     * Add a laid out view to the edge of the stack, moving its neighbors out of its way
+     */
+    void add(GFMinimalNotificationLayout view, @GFMinimalNotification.Direction int direction) {
+        if (!mViews.contains(view)) {
+            view.setStackDirection(direction);
+            mViews.add(view);
+            updateOffsets();
+        }
+    }
+
+    /**
+     * Remove a view from the stack, its neighbors closing the gap it leaves behind
+     */
+    void remove(GFMinimalNotificationLayout view) {
+        if (mViews.remove(view)) {
+            updateOffsets();
+        }
+    }
+
+    /**
+     * Move a view that was transitioning in or out back to its place in the stack
+     */
+    void settle(GFMinimalNotificationLayout view) {
+        if (mViews.contains(view) && ViewCompat.getTranslationY(view) != view.getStackOffset()) {
+            moveAll();
+        }
+    }
+
+    private void updateOffsets() {
+        float top = 0f;
+        float bottom = 0f;
+        for (int i = mViews.size() - 1; i >= 0; i--) {
+            final GFMinimalNotificationLayout view = mViews.get(i);
+            if (view.getStackDirection() == GFMinimalNotification.DIRECTION_TOP) {
+                view.setStackOffset(top);
+                top += view.getHeight();
+            } else {
+                view.setStackOffset(bottom);
+                bottom -= view.getHeight();
+            }
+        }
+        moveAll();
+    }
+
+    private void moveAll() {
+        mAnimator.cancel();
+        mMoving.clear();
+        if (mMovingFrom.length < mViews.size()) {
+            mMovingFrom = new float[mViews.size() * 2];
+        }
+        for (int i = 0; i < mViews.size(); i++) {
+            final GFMinimalNotificationLayout view = mViews.get(i);
+            final float from = ViewCompat.getTranslationY(view);
+            if (!view.isTransitioning() && from != view.getStackOffset()) {
+                mMovingFrom[mMoving.size()] = from;
+                mMoving.add(view);
+            }
+        }
+        if (!mMoving.isEmpty()) {
+            mAnimator.start();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.gfranks.minimal.notification;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.view.ViewCompat;
+import android.text.Layout;
+import android.text.PrecomputedText;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.widget.TextView;
+
+/**
+ * Shapes and breaks the message of a notification off the main thread while it waits to be shown,
+ * so that measuring it on the main thread reuses the result instead of laying the text out again.
+ *
+ * <p>The lite renderer is handed a complete {@link StaticLayout} once it knows the width it lays the
+ * message out within, which pooled views do from their last use. Otherwise, on API 28 and above,
+ * the message is replaced with a {@link PrecomputedText} holding its shaped glyphs. Below API 28 a
+ * default renderer that was never measured is left as it is.
+ *
+ * <p>Whatever is built is only taken up if the message was not changed in the meantime, and never
+ * once the notification is on screen, by then its text was already laid out.
+ */
+final class GFMinimalNotificationTextPrecomputer {
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private GFMinimalNotificationTextPrecomputer() {
+    }
+
+    /**
+     * Precompute the message of the given layout. Called on the main thread the work is handed to a
+     * background thread, called from any other thread, such as while building a notification
+     * asynchronously, it is done right away.
+     */
+    static void precompute(final GFMinimalNotificationLayout layout) {
+        if (layout.hasCustomView()) {
+            return;
+        }
+        final boolean onMainThread = Looper.myLooper() == Looper.getMainLooper();
+        final Runnable task = layout.isLite()
+                ? precomputeLite(layout, onMainThread)
+                : precomputeDefault(layout, onMainThread);
+        if (task == null) {
+            return;
+        }
+        if (onMainThread) {
+            GFMinimalNotificationBuilder.getExecutor().execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    private static Runnable precomputeLite(GFMinimalNotificationLayout layout, final boolean onMainThread) {
+        final GFMinimalNotificationLiteView view = layout.getLiteView();
+        final CharSequence text = view.getText();
+        if (text == null || text.length() == 0 || view.hasLayout()) {
+            return null;
+        }
+        // Everything the layout depends on is captured here, the view may change while it is built
+        final TextPaint paint = view.copyMessagePaint();
+        final int width = view.getLastLayoutWidth();
+        final int maxLines = view.getMaxLines();
+        final int generation = view.getTextGeneration();
+        if (width > 0) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    final StaticLayout staticLayout =
+                            GFMinimalNotificationLiteView.buildLayout(text, paint, width, maxLines);
+                    deliver(onMainThread, new Runnable() {
+                        @Override
+                        public void run() {
+                            view.setPrecomputedLayout(staticLayout, width, generation);
+                        }
+                    });
+                }
+            };
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P || text instanceof PrecomputedText) {
+            return null;
+        }
+        // Match what the lite renderer lays the message out with, or the shaping would be redone
+        final PrecomputedText.Params params = new PrecomputedText.Params.Builder(paint)
+                .setBreakStrategy(Layout.BREAK_STRATEGY_SIMPLE)
+                .setHyphenationFrequency(Layout.HYPHENATION_FREQUENCY_NONE)
+                .build();
+        return new Runnable() {
+            @Override
+            public void run() {
+                final PrecomputedText precomputed = PrecomputedText.create(text, params);
+                deliver(onMainThread, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (view.getTextGeneration() == generation && !ViewCompat.isAttachedToWindow(view)) {
+                            view.setText(precomputed);
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    private static Runnable precomputeDefault(GFMinimalNotificationLayout layout, final boolean onMainThread) {
+        final TextView view = layout.getMessageView();
+        final CharSequence text = view.getText();
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P || text == null || text.length() == 0
+                || text instanceof PrecomputedText) {
+            return null;
+        }
+        final PrecomputedText.Params params = view.getTextMetricsParams();
+        return new Runnable() {
+            @Override
+            public void run() {
+                final PrecomputedText precomputed = PrecomputedText.create(text, params);
+                deliver(onMainThread, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (view.getText() != text || ViewCompat.isAttachedToWindow(view)) {
+                            return;
+                        }
+                        try {
+                            view.setText(precomputed);
+                        } catch (IllegalArgumentException exception) {
+                            // The text was restyled while it was precomputed, leave it to be laid out as usual
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    private static void deliver(boolean toMainThread, Runnable runnable) {
+        if (toMainThread) {
+            sMainHandler.post(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+}
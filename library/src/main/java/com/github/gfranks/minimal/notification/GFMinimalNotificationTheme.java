@@ -0,0 +1,86 @@
+package com.github.gfranks.minimal.notification;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.support.annotation.ColorInt;
+import android.support.annotation.StyleRes;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The GFMinimalNotificationTheme attributes resolved from a Context's theme. Instances are
+ * immutable and cached per {@link Resources.Theme}, so repeated notifications within the same
+ * theme skip resolving them again. A cached instance is resolved again once the configuration
+ * it was resolved in changes.
+ */
+final class GFMinimalNotificationTheme {
+
+    private static final @ColorInt int DEFAULT_COLOR_DEFAULT = 0xFF323232;
+    private static final @ColorInt int DEFAULT_COLOR_ERROR = 0xFFE84D3B;
+    private static final @ColorInt int DEFAULT_COLOR_WARNING = 0xFFEDC034;
+
+    private static final Map<Resources.Theme, GFMinimalNotificationTheme> sThemes = new WeakHashMap<>();
+
+    /**
+     * Return the resolved attributes of the given context's theme.
+     *
+     * @throws IllegalArgumentException if the theme is not a Theme.AppCompat theme
+     */
+    static GFMinimalNotificationTheme obtain(Context context) {
+        final Resources.Theme theme = context.getTheme();
+        final Configuration configuration = context.getResources().getConfiguration();
+
+        GFMinimalNotificationTheme resolved;
+        synchronized (sThemes) {
+            resolved = sThemes.get(theme);
+            if (resolved == null || !resolved.mConfiguration.equals(configuration)) {
+                resolved = new GFMinimalNotificationTheme(context, configuration);
+                sThemes.put(theme, resolved);
+            }
+        }
+
+        if (!resolved.mAppCompat) {
+            throw new IllegalArgumentException("You need to use a Theme.AppCompat theme "
+                    + "(or descendant) with the design library.");
+        }
+        return resolved;
+    }
+
+    final @ColorInt int colorDefault;
+    final @ColorInt int colorError;
+    final @ColorInt int colorWarning;
+    // 0 when not set by the theme
+    final @StyleRes int textAppearance;
+    // -1 when not set by the theme
+    final int maxLines;
+    final @GFMinimalNotification.Direction int direction;
+
+    private final boolean mAppCompat;
+    private final Configuration mConfiguration;
+
+    private GFMinimalNotificationTheme(Context context, Configuration configuration) {
+        mConfiguration = new Configuration(configuration);
+
+        TypedArray a = context.obtainStyledAttributes(new int[] { R.attr.colorPrimary });
+        mAppCompat = a.hasValue(0);
+        a.recycle();
+
+        a = context.obtainStyledAttributes(R.styleable.GFMinimalNotificationTheme);
+        colorDefault = a.getColor(R.styleable.GFMinimalNotificationTheme_gf_notification_type_default,
+                DEFAULT_COLOR_DEFAULT);
+        colorError = a.getColor(R.styleable.GFMinimalNotificationTheme_gf_notification_type_error,
+                DEFAULT_COLOR_ERROR);
+        colorWarning = a.getColor(R.styleable.GFMinimalNotificationTheme_gf_notification_type_warning,
+                DEFAULT_COLOR_WARNING);
+        textAppearance = a.getResourceId(
+                R.styleable.GFMinimalNotificationTheme_gf_notification_textAppearance, 0);
+        maxLines = a.getInt(R.styleable.GFMinimalNotificationTheme_gf_notification_maxLines, -1);
+        direction = a.getInt(R.styleable.GFMinimalNotificationTheme_gf_notification_direction,
+                GFMinimalNotification.DIRECTION_BOTTOM) == GFMinimalNotification.DIRECTION_TOP
+                ? GFMinimalNotification.DIRECTION_TOP : GFMinimalNotification.DIRECTION_BOTTOM;
+        a.recycle();
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.gfranks.minimal.notification;
+
+import android.content.Context;
+import android.support.design.widget.CoordinatorLayout;
+import android.view.View;
+import android.view.accessibility.AccessibilityManager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Fails once a steady state show/dismiss cycle allocates more than its budget, or if allocations
+ * cannot be counted at all.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AllocationBudgetTest {
+
+    // Leaves room for the odd Message the pool has to create
+    private static final long SHOW_DISMISS_BUDGET_BYTES = 64;
+
+    private static final int WIDTH_SPEC = View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY);
+    private static final int HEIGHT_SPEC = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+
+    @Test
+    public void managerShowDismissStaysWithinBudget() {
+        final GFMinimalNotificationManager manager = new GFMinimalNotificationManager();
+        final GFMinimalNotificationManager.Record record = new GFMinimalNotificationManager.Record(CALLBACK);
+        final long allocated = Allocations.count(new Allocations.Operation() {
+            @Override
+            public void run() {
+                manager.show(record, GFMinimalNotification.LENGTH_SHORT, GFMinimalNotification.TYPE_DEFAULT,
+                        GFMinimalNotification.PRIORITY_DEFAULT, null);
+                manager.onShown(record);
+                manager.dismiss(record, GFMinimalNotification.Callback.DISMISS_EVENT_MANUAL);
+                manager.onDismissed(record);
+            }
+        });
+
+        assertCounted(allocated);
+        assertWithinBudget("manager show/dismiss", allocated);
+    }
+
+    /**
+     * Shows and dismisses a notification made on a pooled layout. What adding, laying out and
+     * removing the layout costs the framework is measured on its own and left out of the budget.
+     */
+    @Test
+    public void notificationShowDismissStaysWithinBudget() {
+        final TestActivity activity = Robolectric.buildActivity(TestActivity.class).setup().get();
+        final CoordinatorLayout parent = activity.getCoordinatorLayout();
+        // Animations allocate in the framework on every run, with accessibility enabled there are none
+        shadowOf((AccessibilityManager) activity.getSystemService(Context.ACCESSIBILITY_SERVICE))
+                .setEnabled(true);
+
+        // Recycle a view for the notification below to be made with
+        final GFMinimalNotification recycled = GFMinimalNotification.make(parent, "Recycled",
+                GFMinimalNotification.LENGTH_INDEFINITE).setReusable(false);
+        showAndDismiss(recycled);
+        final GFMinimalNotification notification = GFMinimalNotification.make(parent, "Budget",
+                GFMinimalNotification.LENGTH_INDEFINITE);
+        assertSame("the notification was not made on a pooled layout", recycled.getView(), notification.getView());
+
+        final long cycle = Allocations.count(new Allocations.Operation() {
+            @Override
+            public void run() {
+                showAndDismiss(notification);
+            }
+        });
+
+        final GFMinimalNotificationLayout layout = GFMinimalNotificationLayoutPool.get(activity)
+                .acquire(parent, 0, false);
+        layout.setMessageText("Budget");
+        final long framework = Allocations.count(new Allocations.Operation() {
+            @Override
+            public void run() {
+                parent.addView(layout);
+                ShadowLooper.idleMainLooper();
+                layOut(layout);
+                parent.removeView(layout);
+                ShadowLooper.idleMainLooper();
+            }
+        });
+
+        assertCounted(cycle);
+        assertCounted(framework);
+        assertWithinBudget("notification show/dismiss, beyond the " + framework + " bytes of the framework",
+                cycle - framework);
+    }
+
+    private static void showAndDismiss(GFMinimalNotification notification) {
+        notification.show();
+        ShadowLooper.idleMainLooper();
+        // Stands in for the traversal following the view being added
+        layOut(notification.getView());
+        notification.dismiss();
+        ShadowLooper.idleMainLooper();
+    }
+
+    private static void layOut(View view) {
+        view.measure(WIDTH_SPEC, HEIGHT_SPEC);
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    private static void assertCounted(long allocated) {
+        if (allocated < 0) {
+            fail("allocations cannot be counted on this JVM, nothing was checked against the budget");
+        }
+    }
+
+    private static void assertWithinBudget(String name, long allocated) {
+        assertTrue(name + " allocated " + allocated + " bytes, the budget is "
+                + SHOW_DISMISS_BUDGET_BYTES, allocated <= SHOW_DISMISS_BUDGET_BYTES);
+    }
+
+    private static final GFMinimalNotificationManager.Callback CALLBACK = new GFMinimalNotificationManager.Callback() {
+        @Override
+        public void show() {
+        }
+
+        @Override
+        public void dismiss(int event) {
+        }
+
+        @Override
+        public void remove() {
+        }
+
+        @Override
+        public void coalesce(GFMinimalNotificationManager.Callback from, int repeatCount) {
+        }
+
+        @Override
+        public void discard() {
+        }
+
+        @Override
+        public CharSequence getText() {
+            return null;
+        }
+
+        @Override
+        public void merged() {
+        }
+
+        @Override
+        public void onEvent(int event, int queueDepth) {
+        }
+    };
+}
@@ -0,0 +1,80 @@
+package com.github.gfranks.minimal.notification;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Counts the bytes an operation allocates per run, once warmed up so that the JIT has settled.
+ */
+final class Allocations {
+
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int ITERATIONS = 1000;
+
+    interface Operation {
+        void run();
+    }
+
+    private static final Method sGetThreadAllocatedBytes;
+    private static final Object sThreadMXBean;
+    private static final long sOverhead;
+
+    static {
+        // java.lang.management is missing from the android.jar these tests compile against
+        Method method = null;
+        Object threadMXBean = null;
+        try {
+            threadMXBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            method = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+        } catch (Exception e) {
+            // allocations are reported as -1
+        }
+        sGetThreadAllocatedBytes = method;
+        sThreadMXBean = threadMXBean;
+
+        // The bytes allocated by reading the allocated bytes, subtracted from every reading
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            overhead = Math.min(overhead, -allocatedBytes() + allocatedBytes());
+        }
+        sOverhead = overhead;
+    }
+
+    private Allocations() {
+    }
+
+    /**
+     * Return the median number of bytes the operation allocates per run, or -1 if allocations
+     * cannot be counted on this JVM.
+     */
+    static long count(Operation operation) {
+        if (sGetThreadAllocatedBytes == null) {
+            return -1;
+        }
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run();
+        }
+
+        final long[] allocations = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            final long allocatedBefore = allocatedBytes();
+            operation.run();
+            allocations[i] = allocatedBytes() - allocatedBefore - sOverhead;
+        }
+        Arrays.sort(allocations);
+        return allocations[ITERATIONS / 2];
+    }
+
+    private static long allocatedBytes() {
+        if (sGetThreadAllocatedBytes == null) {
+            return 0;
+        }
+        try {
+            return (Long) sGetThreadAllocatedBytes.invoke(sThreadMXBean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
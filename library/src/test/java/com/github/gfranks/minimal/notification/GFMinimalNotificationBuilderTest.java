@@ -0,0 +1,135 @@
+package com.github.gfranks.minimal.notification;
+
+import android.support.design.widget.CoordinatorLayout;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class GFMinimalNotificationBuilderTest {
+
+    private CoordinatorLayout mParent;
+
+    @Before
+    public void setUp() {
+        mParent = Robolectric.buildActivity(TestActivity.class).setup().get().getCoordinatorLayout();
+    }
+
+    @Test
+    public void builtNotificationShows() {
+        final GFMinimalNotification notification = new GFMinimalNotificationBuilder(mParent)
+                .setText("Built")
+                .setDuration(GFMinimalNotification.LENGTH_LONG)
+                .build();
+        // Nothing built may be handed to the next notification before it was even shown
+        assertNotSame(notification.getView(), GFMinimalNotification.make(mParent, "Next",
+                GFMinimalNotification.LENGTH_SHORT).getView());
+
+        notification.show();
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+
+        assertTrue(notification.isShown());
+        assertSame(mParent, notification.getView().getParent());
+    }
+
+    @Test
+    public void dismissedNotificationShowsAgain() {
+        final GFMinimalNotification notification = new GFMinimalNotificationBuilder(mParent)
+                .setText("Built")
+                .build();
+        notification.show();
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+        notification.dismiss();
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+
+        // Nobody asked for its view to be recycled, it is still ours
+        notification.show();
+        ShadowLooper.idleMainLooper(1, TimeUnit.SECONDS);
+
+        assertTrue(notification.isShown());
+        assertSame(mParent, notification.getView().getParent());
+    }
+
+    @Test
+    public void buildAsyncDeliversNotification() throws Exception {
+        final RecordingListener listener = new RecordingListener();
+        final Future<GFMinimalNotification> future = new GFMinimalNotificationBuilder(mParent)
+                .setText("Built")
+                .buildAsync(listener);
+        awaitDelivery(future);
+
+        assertNotNull(listener.built);
+        assertSame(future.get(), listener.built);
+        assertNull(listener.failure);
+    }
+
+    @Test
+    public void buildAsyncReportsFailure() {
+        final RecordingListener listener = new RecordingListener();
+        final IllegalStateException failure = new IllegalStateException("Nothing to bind");
+        final Future<GFMinimalNotification> future = new GFMinimalNotificationBuilder(mParent)
+                .setCustomView(R.layout.layout_minimal_notification_action_text,
+                        new GFMinimalNotification.CustomViewBinder() {
+                            @Override
+                            public void onBindCustomView(GFMinimalNotification notification, View customView) {
+                                throw failure;
+                            }
+                        })
+                .buildAsync(listener);
+        awaitDelivery(future);
+
+        assertSame(failure, listener.failure);
+        assertNull(listener.built);
+        try {
+            future.get();
+            throw new AssertionError("the Future should hold the failure");
+        } catch (ExecutionException expected) {
+            assertSame(listener.failure, expected.getCause());
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Run the main thread until the Future is done, it may need the main thread to get there, and
+     * then until the listener was notified
+     */
+    private static void awaitDelivery(Future<GFMinimalNotification> future) {
+        while (!future.isDone()) {
+            ShadowLooper.idleMainLooper();
+            Thread.yield();
+        }
+        ShadowLooper.idleMainLooper();
+    }
+
+    private static final class RecordingListener implements GFMinimalNotificationBuilder.OnBuildListener {
+
+        GFMinimalNotification built;
+        RuntimeException failure;
+
+        @Override
+        public void onNotificationBuilt(GFMinimalNotification notification) {
+            built = notification;
+        }
+
+        @Override
+        public void onBuildFailed(RuntimeException exception) {
+            failure = exception;
+        }
+    }
+}
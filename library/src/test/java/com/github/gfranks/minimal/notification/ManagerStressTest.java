@@ -0,0 +1,173 @@
+package com.github.gfranks.minimal.notification;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shows and dismisses notifications from many threads at once while the main thread drains the
+ * queue, checking that the last show made by each thread stands and that no dismiss is delivered
+ * twice.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ManagerStressTest {
+
+    private static final int PRODUCERS = 8;
+    private static final int ITERATIONS = 2000;
+
+    @After
+    public void tearDown() {
+        GFMinimalNotification.setQueueCapacity(GFMinimalNotificationManager.DEFAULT_QUEUE_CAPACITY);
+        GFMinimalNotification.setMaxVisible(GFMinimalNotificationManager.DEFAULT_MAX_VISIBLE);
+    }
+
+    @Test
+    public void noShowLostNoDismissTwice() throws InterruptedException {
+        // Room for everyone, nothing may be dropped by the overflow policy or replaced
+        GFMinimalNotification.setQueueCapacity(PRODUCERS);
+        GFMinimalNotification.setMaxVisible(PRODUCERS);
+        final GFMinimalNotificationManager manager = new GFMinimalNotificationManager();
+        final FakeNotification[] notifications = new FakeNotification[PRODUCERS];
+        for (int i = 0; i < PRODUCERS; i++) {
+            notifications[i] = new FakeNotification(manager);
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] producers = new Thread[PRODUCERS];
+        for (int i = 0; i < PRODUCERS; i++) {
+            final FakeNotification notification = notifications[i];
+            producers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < ITERATIONS; j++) {
+                        notification.show(j % 3 - 1);
+                        if (j % 2 == 0) {
+                            manager.dismiss(notification.record, GFMinimalNotification.Callback.DISMISS_EVENT_MANUAL);
+                        }
+                    }
+                    // The last word is a show
+                    notification.show(GFMinimalNotification.PRIORITY_DEFAULT);
+                }
+            });
+            producers[i].start();
+        }
+
+        start.countDown();
+        while (isAlive(producers)) {
+            ShadowLooper.idleMainLooper();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        ShadowLooper.idleMainLooper();
+
+        for (FakeNotification notification : notifications) {
+            assertEquals("a dismiss was delivered twice", 0, notification.doubleDismisses);
+            assertTrue("a show was lost", manager.isCurrent(notification.record));
+        }
+        assertEquals(0, manager.getQueueSize());
+    }
+
+    private static boolean isAlive(Thread[] threads) {
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stands in for a GFMinimalNotification, calling back the way its view does once animated, on
+     * the main thread
+     */
+    private static final class FakeNotification implements GFMinimalNotificationManager.Callback {
+
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private final GFMinimalNotificationManager mManager;
+        final GFMinimalNotificationManager.Record record;
+        // Only touched on the main thread
+        private boolean mDismissing;
+        int doubleDismisses;
+
+        FakeNotification(GFMinimalNotificationManager manager) {
+            mManager = manager;
+            record = new GFMinimalNotificationManager.Record(this);
+        }
+
+        void show(@GFMinimalNotification.Priority int priority) {
+            mManager.show(record, GFMinimalNotification.LENGTH_INDEFINITE, GFMinimalNotification.TYPE_DEFAULT,
+                    priority, null);
+        }
+
+        @Override
+        public void show() {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mManager.onShown(record);
+                }
+            });
+        }
+
+        @Override
+        public void dismiss(int event) {
+            if (mDismissing) {
+                doubleDismisses++;
+                return;
+            }
+            if (!mManager.isCurrent(record)) {
+                // Dropped from the queue, there is nothing to animate
+                return;
+            }
+            mDismissing = true;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mDismissing = false;
+                    mManager.onDismissed(record);
+                }
+            });
+        }
+
+        @Override
+        public void remove() {
+        }
+
+        @Override
+        public void coalesce(GFMinimalNotificationManager.Callback from, int repeatCount) {
+        }
+
+        @Override
+        public void discard() {
+        }
+
+        @Override
+        public CharSequence getText() {
+            return null;
+        }
+
+        @Override
+        public void merged() {
+        }
+
+        @Override
+        public void onEvent(int event, int queueDepth) {
+        }
+    }
+}
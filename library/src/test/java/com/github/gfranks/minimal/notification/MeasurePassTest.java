@@ -0,0 +1,114 @@
+package com.github.gfranks.minimal.notification;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the measure passes {@link GFMinimalNotificationLayout#onMeasure} makes over its children,
+ * through a child that counts the times it is measured. A message taking the number of lines it is
+ * estimated to, the common case, must be measured in a single pass.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MeasurePassTest {
+
+    private static final String SHORT_TEXT = "Message sent";
+    private static final String MULTI_LINE_TEXT = "The message could not be sent\nit will be sent again soon";
+
+    private static final int EXACTLY = View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY);
+    private static final int AT_MOST = View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.AT_MOST);
+    private static final int UNSPECIFIED = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+
+    private TestActivity mActivity;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.buildActivity(TestActivity.class).setup().get();
+    }
+
+    @Test
+    public void shortTextMeasuresOnce() {
+        assertPasses(1, newLayout(SHORT_TEXT, false), EXACTLY);
+    }
+
+    @Test
+    public void shortTextWithActionMeasuresOnce() {
+        assertPasses(1, newLayout(SHORT_TEXT, true), EXACTLY);
+    }
+
+    @Test
+    public void shortTextAtMostMeasuresOnce() {
+        assertPasses(1, newLayout(SHORT_TEXT, false), AT_MOST);
+    }
+
+    @Test
+    public void multiLineTextMeasuresOnce() {
+        assertPasses(1, newLayout(MULTI_LINE_TEXT, false), EXACTLY);
+    }
+
+    @Test
+    public void remeasureMeasuresOnce() {
+        final GFMinimalNotificationLayout layout = newLayout(SHORT_TEXT, true);
+        assertPasses(1, layout, EXACTLY);
+        layout.setMessageText(MULTI_LINE_TEXT);
+        assertPasses(1, layout, EXACTLY);
+        layout.setMessageText(SHORT_TEXT);
+        assertPasses(1, layout, AT_MOST);
+    }
+
+    @Test
+    public void constructedLayoutGetsDefaultChildren() {
+        final GFMinimalNotificationLayout layout = new GFMinimalNotificationLayout(mActivity);
+        layout.measure(EXACTLY, UNSPECIFIED);
+
+        assertNotNull(layout.getMessageView());
+        assertTrue(layout.getMeasuredHeight() > 0);
+    }
+
+    private GFMinimalNotificationLayout newLayout(String text, boolean action) {
+        final GFMinimalNotificationLayout layout = GFMinimalNotificationLayoutPool.get(mActivity)
+                .acquire(mActivity.getCoordinatorLayout(), 0, false);
+        layout.setMessageText(text);
+        if (action) {
+            layout.setAction("Retry", null);
+        }
+        layout.addView(new CountingView(mActivity), new ViewGroup.LayoutParams(0, 0));
+        return layout;
+    }
+
+    private static void assertPasses(int expected, GFMinimalNotificationLayout layout, int widthMeasureSpec) {
+        final CountingView counter = (CountingView) layout.getChildAt(layout.getChildCount() - 1);
+        counter.measures = 0;
+        // Otherwise measure is skipped for the same specs, the counter is never laid out so it is
+        // measured again on every pass
+        layout.forceLayout();
+        counter.forceLayout();
+        layout.measure(widthMeasureSpec, UNSPECIFIED);
+        assertEquals("measure passes", expected, counter.measures);
+    }
+
+    private static final class CountingView extends View {
+
+        int measures;
+
+        CountingView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            measures++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.gfranks.minimal.notification;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fills the queue behind a shown notification and checks which notification each overflow policy
+ * drops to make room for the next.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class OverflowPolicyTest {
+
+    private GFMinimalNotificationManager mManager;
+    private FakeNotification mOlderDefault;
+    private FakeNotification mNewerLow;
+
+    @Before
+    public void setUp() {
+        GFMinimalNotification.setQueueCapacity(2);
+        mManager = new GFMinimalNotificationManager();
+        new FakeNotification(mManager).show(GFMinimalNotification.PRIORITY_DEFAULT);
+        mOlderDefault = new FakeNotification(mManager);
+        mOlderDefault.show(GFMinimalNotification.PRIORITY_DEFAULT);
+        mNewerLow = new FakeNotification(mManager);
+        mNewerLow.show(GFMinimalNotification.PRIORITY_LOW);
+    }
+
+    @After
+    public void tearDown() {
+        GFMinimalNotification.setQueueCapacity(GFMinimalNotificationManager.DEFAULT_QUEUE_CAPACITY);
+        GFMinimalNotification.setQueueOverflowPolicy(GFMinimalNotification.OVERFLOW_DROP_OLDEST);
+    }
+
+    @Test
+    public void dropOldestDropsOldest() {
+        GFMinimalNotification.setQueueOverflowPolicy(GFMinimalNotification.OVERFLOW_DROP_OLDEST);
+        final FakeNotification incoming = new FakeNotification(mManager);
+        incoming.show(GFMinimalNotification.PRIORITY_DEFAULT);
+
+        assertTrue(mOlderDefault.discarded);
+        assertQueued(mNewerLow, incoming);
+    }
+
+    @Test
+    public void dropLowestPriorityDropsLowest() {
+        GFMinimalNotification.setQueueOverflowPolicy(GFMinimalNotification.OVERFLOW_DROP_LOWEST_PRIORITY);
+        final FakeNotification incoming = new FakeNotification(mManager);
+        incoming.show(GFMinimalNotification.PRIORITY_DEFAULT);
+
+        assertTrue(mNewerLow.discarded);
+        assertQueued(mOlderDefault, incoming);
+    }
+
+    @Test
+    public void dropLowestPriorityDropsIncomingWhenLowest() {
+        GFMinimalNotification.setQueueOverflowPolicy(GFMinimalNotification.OVERFLOW_DROP_LOWEST_PRIORITY);
+        // Make the queued notification of low priority the most important one waiting
+        mNewerLow.show(GFMinimalNotification.PRIORITY_HIGH);
+        final FakeNotification incoming = new FakeNotification(mManager);
+        incoming.show(GFMinimalNotification.PRIORITY_LOW);
+
+        assertFalse(incoming.record.isQueued());
+        assertQueued(mOlderDefault, mNewerLow);
+    }
+
+    @Test
+    public void coalesceReplacesNewestOfSamePriority() {
+        GFMinimalNotification.setQueueOverflowPolicy(GFMinimalNotification.OVERFLOW_COALESCE);
+        final FakeNotification incoming = new FakeNotification(mManager);
+        incoming.show(GFMinimalNotification.PRIORITY_LOW);
+
+        assertTrue(mNewerLow.discarded);
+        assertQueued(mOlderDefault, incoming);
+    }
+
+    private void assertQueued(FakeNotification... notifications) {
+        assertEquals(notifications.length, mManager.getQueueSize());
+        for (FakeNotification notification : notifications) {
+            assertFalse(notification.discarded);
+            assertTrue(notification.record.isQueued());
+        }
+    }
+
+    private static final class FakeNotification implements GFMinimalNotificationManager.Callback {
+
+        private final GFMinimalNotificationManager mManager;
+        final GFMinimalNotificationManager.Record record;
+        boolean discarded;
+
+        FakeNotification(GFMinimalNotificationManager manager) {
+            mManager = manager;
+            record = new GFMinimalNotificationManager.Record(this);
+        }
+
+        void show(@GFMinimalNotification.Priority int priority) {
+            mManager.show(record, GFMinimalNotification.LENGTH_INDEFINITE, GFMinimalNotification.TYPE_DEFAULT,
+                    priority, null);
+        }
+
+        @Override
+        public void show() {
+        }
+
+        @Override
+        public void dismiss(int event) {
+        }
+
+        @Override
+        public void remove() {
+        }
+
+        @Override
+        public void coalesce(GFMinimalNotificationManager.Callback from, int repeatCount) {
+        }
+
+        @Override
+        public void discard() {
+            discarded = true;
+        }
+
+        @Override
+        public void merged() {
+        }
+
+        @Override
+        public CharSequence getText() {
+            return null;
+        }
+
+        @Override
+        public void onEvent(int event, int queueDepth) {
+        }
+    }
+}
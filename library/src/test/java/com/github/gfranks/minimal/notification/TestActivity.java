@@ -0,0 +1,27 @@
+package com.github.gfranks.minimal.notification;
+
+import android.os.Bundle;
+import android.support.design.widget.CoordinatorLayout;
+import android.support.v7.app.AppCompatActivity;
+
+/**
+ * Hosts the notifications made by the tests within a CoordinatorLayout, the way most applications
+ * do.
+ */
+public class TestActivity extends AppCompatActivity {
+
+    private CoordinatorLayout mCoordinatorLayout;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        // Not declared in a manifest, the design widgets need an AppCompat theme
+        setTheme(R.style.Theme_AppCompat_Light_NoActionBar);
+        super.onCreate(savedInstanceState);
+        mCoordinatorLayout = new CoordinatorLayout(this);
+        setContentView(mCoordinatorLayout);
+    }
+
+    public CoordinatorLayout getCoordinatorLayout() {
+        return mCoordinatorLayout;
+    }
+}